@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.CodeGenerator;
+import paintcomponents.PaintElement;
+
+/**
+ * Java2D code export through {@link CodeGenerator#generateCode}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CodeGeneratorBenchmark {
+    @Param({ "1000", "10000" })
+    public int elements;
+
+    private List<PaintElement> scene;
+
+    @Setup
+    public void setUp() {
+        scene = new SceneGenerator().mixed(elements).generate();
+    }
+
+    @Benchmark
+    public String generateCode() {
+        return new CodeGenerator().generateCode(scene);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.awt.Point;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.ElementSpatialIndex;
+import paintcomponents.PaintElement;
+
+/**
+ * Topmost-element lookups as the move tool does them on mouse press, through
+ * the spatial index and, for comparison, a plain front-to-back scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class HitTestBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int PROBES = 1024;
+
+    @Param({ "1000", "10000" })
+    public int elements;
+
+    private List<PaintElement> scene;
+    private ElementSpatialIndex index;
+    private Point[] probes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        scene = new SceneGenerator().canvas(WIDTH, HEIGHT).mixed(elements).generate();
+        index = new ElementSpatialIndex();
+        index.rebuild(scene);
+        Random random = new Random(7L);
+        probes = new Point[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = new Point(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+        }
+    }
+
+    @Benchmark
+    public PaintElement indexedHitTest() {
+        return index.findTopmostAt(nextProbe(), scene);
+    }
+
+    @Benchmark
+    public PaintElement linearHitTest() {
+        Point point = nextProbe();
+        for (PaintElement element : scene) {
+            if (element != null && element.contains(point)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    private Point nextProbe() {
+        next = (next + 1) & (PROBES - 1);
+        return probes[next];
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.DrawingInfo;
+import app.ProjectIOService;
+import app.SaveState;
+import paintcomponents.PaintElement;
+
+/**
+ * Saving a drawing again after moving a few of its elements, the way the
+ * editor saves: planned against the previous file through a {@link SaveState},
+ * compared with writing the whole file. Includes the occasional compaction.
+ * With {@code thumbnail} set, saves also render the header thumbnail, as the
+ * editor's do, and {@code readInfo} reads that header back as a file chooser
+ * preview does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class IncrementalSaveBenchmark {
+    @Param({ "10000", "50000" })
+    public int elements;
+
+    @Param({ "1" })
+    public int edited;
+
+    @Param({ "40" })
+    public int images;
+
+    @Param({ "512" })
+    public int imageSize;
+
+    @Param({ "false", "true" })
+    public boolean thumbnail;
+
+    private final ProjectIOService ioService = new ProjectIOService();
+    private List<PaintElement> scene;
+    private SaveState state;
+    private File target;
+    private Dimension canvasSize;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scene = new ArrayList<>(new SceneGenerator().imageSize(imageSize).mixed(elements).images(images).generate());
+        target = Files.createTempFile("bench-incremental", ".pfd").toFile();
+        canvasSize = thumbnail ? new Dimension(1920, 1080) : null;
+        state = new SaveState();
+        ProjectIOService.SavePlan plan = ioService.planSave(target, scene, state, canvasSize);
+        ioService.save(plan, ProjectIOService.ProgressListener.NONE);
+        state.saved(plan);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        target.delete();
+    }
+
+    @Benchmark
+    public File saveAfterEdit() throws IOException {
+        List<PaintElement> moved = new ArrayList<>(edited);
+        for (int i = 0; i < edited; i++) {
+            PaintElement element = scene.get((step * 7919 + i * 104729) % scene.size());
+            element.setPosition(element.getPosition().x + ((step & 1) == 0 ? 1 : -1), element.getPosition().y);
+            moved.add(element);
+        }
+        step++;
+        state.markEdited(moved);
+        ProjectIOService.SavePlan plan = ioService.planSave(target, scene, state, canvasSize);
+        ioService.save(plan, ProjectIOService.ProgressListener.NONE);
+        state.saved(plan);
+        return target;
+    }
+
+    @Benchmark
+    public File fullSave() throws IOException {
+        // A fresh state knows no previous file, so the plan copies and writes everything.
+        ioService.save(ioService.planSave(target, scene, new SaveState(), canvasSize), ProjectIOService.ProgressListener.NONE);
+        return target;
+    }
+
+    @Benchmark
+    public DrawingInfo readInfo() throws IOException {
+        return ioService.readInfo(target);
+    }
+}
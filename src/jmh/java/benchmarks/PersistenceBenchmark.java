@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.ProjectIOService;
+import paintcomponents.PaintElement;
+
+/**
+ * Saving and loading a project file through {@link ProjectIOService}, on a
+ * scene with a configurable number of embedded images, in both file formats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PersistenceBenchmark {
+    @Param({ "1000", "10000" })
+    public int elements;
+
+    @Param({ "200" })
+    public int strokeLength;
+
+    @Param({ "256" })
+    public int imageSize;
+
+    @Param({ "10" })
+    public int images;
+
+    @Param({ "BINARY", "SERIALIZED" })
+    public ProjectIOService.Format format;
+
+    private final ProjectIOService ioService = new ProjectIOService();
+    private List<PaintElement> scene;
+    private File saveTarget;
+    private File loadSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scene = new SceneGenerator().strokeLength(strokeLength).imageSize(imageSize)
+                .mixed(elements).images(images).generate();
+        saveTarget = Files.createTempFile("bench-save", ".pfd").toFile();
+        loadSource = Files.createTempFile("bench-load", ".pfd").toFile();
+        ioService.save(loadSource, scene, format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        saveTarget.delete();
+        loadSource.delete();
+    }
+
+    @Benchmark
+    public File save() throws IOException {
+        ioService.save(saveTarget, scene, format);
+        return saveTarget;
+    }
+
+    @Benchmark
+    public List<PaintElement> load() throws IOException, ClassNotFoundException {
+        return ioService.load(loadSource);
+    }
+}
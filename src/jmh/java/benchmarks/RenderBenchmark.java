@@ -0,0 +1,102 @@
+package benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.CanvasRenderer;
+import paintcomponents.PaintElement;
+import ui.GridManager;
+
+/**
+ * Full-canvas and clipped repaints through {@link CanvasRenderer#render},
+ * drawn headlessly into a {@link BufferedImage}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({ "1000", "10000" })
+    public int elements;
+
+    @Param({ "200" })
+    public int strokeLength;
+
+    @Param({ "true" })
+    public boolean antiAliasing;
+
+    @Param({ "false", "true" })
+    public boolean grid;
+
+    private List<PaintElement> scene;
+    private List<PaintElement> selection;
+    private CanvasRenderer renderer;
+    private GridManager gridManager;
+    private BufferedImage target;
+
+    @Setup
+    public void setUp() {
+        scene = new SceneGenerator().canvas(WIDTH, HEIGHT).strokeLength(strokeLength).mixed(elements).generate();
+        selection = new ArrayList<>(Collections.singletonList(scene.get(0)));
+        renderer = new CanvasRenderer();
+        gridManager = new GridManager(null);
+        gridManager.setGridVisible(grid);
+        target = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.flush();
+    }
+
+    @Benchmark
+    public BufferedImage fullRepaint() {
+        Graphics2D g2d = target.createGraphics();
+        try {
+            render(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        return target;
+    }
+
+    @Benchmark
+    public BufferedImage clippedRepaint() {
+        Graphics2D g2d = target.createGraphics();
+        try {
+            g2d.clipRect(WIDTH / 2 - 100, HEIGHT / 2 - 100, 200, 200);
+            render(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        return target;
+    }
+
+    private void render(Graphics2D g2d) {
+        renderer.render(g2d, null, gridManager, scene, WIDTH, HEIGHT, antiAliasing, false, null,
+                selection, selection.get(0), null, null, null,
+                false, new ArrayList<>(), null, false, new ArrayList<>());
+    }
+}
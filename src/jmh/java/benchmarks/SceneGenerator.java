@@ -0,0 +1,185 @@
+package benchmarks;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import paintcomponents.BezierElement;
+import paintcomponents.CircleElement;
+import paintcomponents.FreehandElement;
+import paintcomponents.ImageElement;
+import paintcomponents.LineElement;
+import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
+import paintcomponents.PolygonElement;
+import paintcomponents.RectangleElement;
+import paintcomponents.RoundRectangleElement;
+import paintcomponents.TextElement;
+
+/**
+ * Builds reproducible synthetic drawings for the benchmarks. Counts are per
+ * element type; everything is placed with a fixed seed inside a
+ * {@code width} x {@code height} canvas, so two runs see the same scene.
+ */
+public class SceneGenerator {
+    private static final Color[] PALETTE = {
+            Color.BLACK, Color.RED, Color.BLUE, new Color(0, 128, 0), Color.ORANGE,
+            new Color(128, 0, 128, 180), new Color(0, 0, 0, 90)
+    };
+    private static final String[] FONT_FAMILIES = { Font.SANS_SERIF, Font.SERIF, Font.MONOSPACED };
+
+    private long seed = 42L;
+    private int width = 1920;
+    private int height = 1080;
+    private int rectangles;
+    private int roundRectangles;
+    private int circles;
+    private int lines;
+    private int polygons;
+    private int texts;
+    private int freehands;
+    private int beziers;
+    private int images;
+    private int strokeLength = 200;
+    private int imageSize = 128;
+    private double shadowFraction = 0.1;
+
+    public SceneGenerator seed(long seed) { this.seed = seed; return this; }
+    public SceneGenerator canvas(int width, int height) { this.width = width; this.height = height; return this; }
+    public SceneGenerator rectangles(int count) { this.rectangles = count; return this; }
+    public SceneGenerator roundRectangles(int count) { this.roundRectangles = count; return this; }
+    public SceneGenerator circles(int count) { this.circles = count; return this; }
+    public SceneGenerator lines(int count) { this.lines = count; return this; }
+    public SceneGenerator polygons(int count) { this.polygons = count; return this; }
+    public SceneGenerator texts(int count) { this.texts = count; return this; }
+    public SceneGenerator freehands(int count) { this.freehands = count; return this; }
+    public SceneGenerator beziers(int count) { this.beziers = count; return this; }
+    public SceneGenerator images(int count) { this.images = count; return this; }
+    /** Number of points in each freehand stroke. */
+    public SceneGenerator strokeLength(int points) { this.strokeLength = points; return this; }
+    /** Edge length in pixels of each generated image. */
+    public SceneGenerator imageSize(int pixels) { this.imageSize = pixels; return this; }
+    public SceneGenerator shadowFraction(double fraction) { this.shadowFraction = fraction; return this; }
+
+    /**
+     * Spreads {@code total} elements evenly over all nine element types.
+     */
+    public SceneGenerator mixed(int total) {
+        int each = Math.max(1, total / 9);
+        return rectangles(each).roundRectangles(each).circles(each).lines(each).polygons(each)
+                .texts(each).freehands(each).beziers(each).images(total - 8 * each);
+    }
+
+    /**
+     * @return the elements in a shuffled z-order, index 0 topmost as in the editor
+     */
+    public List<PaintElement> generate() {
+        Random random = new Random(seed);
+        List<PaintElement> elements = new ArrayList<>();
+        for (int i = 0; i < rectangles; i++) {
+            elements.add(new RectangleElement(x(random), y(random), size(random), size(random),
+                    color(random), color(random), strokeWidth(random), random.nextBoolean(), true));
+        }
+        for (int i = 0; i < roundRectangles; i++) {
+            elements.add(new RoundRectangleElement(x(random), y(random), size(random), size(random),
+                    10 + random.nextInt(20), 10 + random.nextInt(20),
+                    color(random), color(random), strokeWidth(random), random.nextBoolean(), true));
+        }
+        for (int i = 0; i < circles; i++) {
+            int d = size(random);
+            elements.add(new CircleElement(x(random), y(random), d, d,
+                    color(random), color(random), strokeWidth(random), random.nextBoolean(), true));
+        }
+        for (int i = 0; i < lines; i++) {
+            elements.add(new LineElement(x(random), y(random), x(random), y(random), color(random), strokeWidth(random)));
+        }
+        for (int i = 0; i < polygons; i++) {
+            elements.add(new PolygonElement(polygon(random), color(random), color(random), strokeWidth(random),
+                    random.nextBoolean(), true));
+        }
+        for (int i = 0; i < texts; i++) {
+            Font font = new Font(FONT_FAMILIES[random.nextInt(FONT_FAMILIES.length)],
+                    random.nextInt(3), 10 + random.nextInt(30));
+            elements.add(new TextElement("Label " + i, x(random), y(random), font, color(random)));
+        }
+        for (int i = 0; i < freehands; i++) {
+            elements.add(new FreehandElement(walk(random, strokeLength), color(random), strokeWidth(random)));
+        }
+        for (int i = 0; i < beziers; i++) {
+            elements.add(new BezierElement(walk(random, 3 * (2 + random.nextInt(4)) + 1), color(random), strokeWidth(random)));
+        }
+        for (int i = 0; i < images; i++) {
+            elements.add(new ImageElement(image(random), new Point(x(random), y(random)), "generated-" + i + ".png",
+                    "Image " + i));
+        }
+        for (PaintElement element : elements) {
+            element.setShadow(random.nextDouble() < shadowFraction);
+        }
+        Collections.shuffle(elements, random);
+        return elements;
+    }
+
+    private int x(Random random) {
+        return random.nextInt(width);
+    }
+
+    private int y(Random random) {
+        return random.nextInt(height);
+    }
+
+    private static int size(Random random) {
+        return 10 + random.nextInt(150);
+    }
+
+    private static float strokeWidth(Random random) {
+        return 1 + random.nextInt(6);
+    }
+
+    private static Color color(Random random) {
+        return PALETTE[random.nextInt(PALETTE.length)];
+    }
+
+    private List<Point> polygon(Random random) {
+        int cx = x(random);
+        int cy = y(random);
+        int sides = 3 + random.nextInt(6);
+        int radius = 10 + random.nextInt(80);
+        List<Point> points = new ArrayList<>(sides);
+        for (int i = 0; i < sides; i++) {
+            double angle = 2 * Math.PI * i / sides;
+            points.add(new Point(cx + (int) (Math.cos(angle) * radius), cy + (int) (Math.sin(angle) * radius)));
+        }
+        return points;
+    }
+
+    /**
+     * A random walk, roughly what a mouse drag samples.
+     */
+    private PointBuffer walk(Random random, int count) {
+        PointBuffer points = new PointBuffer(count);
+        int px = x(random);
+        int py = y(random);
+        for (int i = 0; i < count; i++) {
+            points.add(px, py);
+            px += random.nextInt(9) - 4;
+            py += random.nextInt(9) - 4;
+        }
+        return points;
+    }
+
+    private BufferedImage image(Random random) {
+        BufferedImage image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, color(random), imageSize, imageSize, color(random)));
+        g2d.fillRect(0, 0, imageSize, imageSize);
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,45 @@
+package actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.Main;
+import paintcomponents.PaintElement;
+
+/**
+ * Adds several elements to the top of the drawing as one step, e.g. a batch
+ * of imported images; undo and redo refresh the layer list once.
+ */
+public class AddElementsAction implements UndoableAction {
+    private final Main mainApp;
+    private final List<PaintElement> elementsToAdd;
+
+    /**
+     * @param elementsToAdd topmost first, as they appear in the drawing
+     */
+    public AddElementsAction(Main mainApp, List<PaintElement> elementsToAdd) {
+        this.mainApp = mainApp;
+        this.elementsToAdd = new ArrayList<>(elementsToAdd);
+    }
+
+    @Override
+    public void undo() {
+        mainApp.internalRemoveElementsFromList(elementsToAdd);
+    }
+
+    @Override
+    public void redo() {
+        mainApp.internalAddElementsToList(elementsToAdd);
+    }
+
+    @Override
+    public String getActionName() {
+        return "Add " + elementsToAdd.size() + " Elements";
+    }
+
+    @Override
+    public long getRetainedSize() {
+        // The elements are in the drawing while the action is done; only the list is extra.
+        return RetainedSize.ACTION + 8L * elementsToAdd.size();
+    }
+}
@@ -2,6 +2,10 @@ package actions;
 import app.Main;
 import paintcomponents.PaintElement;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+
 public class ChangeDisplayNameAction implements UndoableAction {
     private Main mainApp;
     private PaintElement element;
@@ -33,4 +37,27 @@ public class ChangeDisplayNameAction implements UndoableAction {
     public String getActionName() {
         return "Rename: " + oldDisplayName + " -> " + newDisplayName;
     }
+
+    @Override
+    public Collection<PaintElement> getAffectedElements() {
+        return Collections.singletonList(element);
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return RetainedSize.ACTION + RetainedSize.of(oldDisplayName) + RetainedSize.of(newDisplayName);
+    }
+
+    @Override
+    public boolean coalesce(UndoableAction next) {
+        if (!(next instanceof ChangeDisplayNameAction)) {
+            return false;
+        }
+        ChangeDisplayNameAction rename = (ChangeDisplayNameAction) next;
+        if (rename.element != element || !Objects.equals(rename.oldDisplayName, newDisplayName)) {
+            return false;
+        }
+        newDisplayName = rename.newDisplayName;
+        return true;
+    }
 }
@@ -33,4 +33,9 @@ public class ClearAllAction implements UndoableAction {
     public String getActionName() {
         return "Clear All Elements";
     }
+
+    @Override
+    public long getRetainedSize() {
+        return RetainedSize.ACTION + RetainedSize.of(originalElements);
+    }
 }
@@ -0,0 +1,69 @@
+package actions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import paintcomponents.PaintElement;
+
+/**
+ * Several actions recorded together by {@code Main.runAsOneStep}, so they
+ * undo and redo as one step. Undo runs them newest first; the layer list is
+ * refreshed once afterwards rather than after each of them.
+ */
+public class CompositeAction implements UndoableAction {
+    private final String actionName;
+    private final List<UndoableAction> actions;
+
+    /**
+     * @param actions in the order they were done
+     */
+    public CompositeAction(String actionName, List<UndoableAction> actions) {
+        this.actionName = actionName;
+        this.actions = new ArrayList<>(actions);
+    }
+
+    @Override
+    public void undo() {
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            actions.get(i).undo();
+        }
+    }
+
+    @Override
+    public void redo() {
+        for (UndoableAction action : actions) {
+            action.redo();
+        }
+    }
+
+    @Override
+    public String getActionName() {
+        return actionName;
+    }
+
+    @Override
+    public Collection<PaintElement> getAffectedElements() {
+        List<PaintElement> affected = null;
+        for (UndoableAction action : actions) {
+            Collection<PaintElement> elements = action.getAffectedElements();
+            if (!elements.isEmpty()) {
+                if (affected == null) {
+                    affected = new ArrayList<>();
+                }
+                affected.addAll(elements);
+            }
+        }
+        return affected != null ? affected : Collections.emptyList();
+    }
+
+    @Override
+    public long getRetainedSize() {
+        long size = RetainedSize.ACTION + RetainedSize.REFERENCE * actions.size();
+        for (UndoableAction action : actions) {
+            size += action.getRetainedSize();
+        }
+        return size;
+    }
+}
@@ -33,4 +33,9 @@ public class DeleteElementAction implements UndoableAction, Serializable {
     public String getActionName() {
         return "Delete Element: " + elementToRemove.getDisplayName();
     }
+
+    @Override
+    public long getRetainedSize() {
+        return RetainedSize.ACTION + RetainedSize.of(elementToRemove);
+    }
 }
@@ -0,0 +1,47 @@
+package actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.Main;
+import paintcomponents.PaintElement;
+
+/**
+ * Removes several elements from anywhere in the drawing as one step. Undo
+ * puts them all back at their old positions in a single pass over the list.
+ */
+public class DeleteElementsAction implements UndoableAction {
+    private final Main mainApp;
+    private final List<PaintElement> elementsToRemove;
+    private final int[] originalIndices;
+
+    /**
+     * @param elementsToRemove in drawing order
+     * @param originalIndices the position of each element before it was removed, ascending
+     */
+    public DeleteElementsAction(Main mainApp, List<PaintElement> elementsToRemove, int[] originalIndices) {
+        this.mainApp = mainApp;
+        this.elementsToRemove = new ArrayList<>(elementsToRemove);
+        this.originalIndices = originalIndices.clone();
+    }
+
+    @Override
+    public void undo() {
+        mainApp.internalInsertElementsInList(elementsToRemove, originalIndices);
+    }
+
+    @Override
+    public void redo() {
+        mainApp.internalRemoveElementsFromList(elementsToRemove);
+    }
+
+    @Override
+    public String getActionName() {
+        return "Delete " + elementsToRemove.size() + " Elements";
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return RetainedSize.ACTION + RetainedSize.of(elementsToRemove) + 4L * originalIndices.length;
+    }
+}
@@ -2,6 +2,8 @@ package actions;
 
 import paintcomponents.PaintElement;
 import java.awt.Point;
+import java.util.Collection;
+import java.util.Collections;
 
 import app.Main;
 
@@ -10,44 +12,64 @@ public class MoveElementAction implements UndoableAction {
     private PaintElement element;
     private Point oldPosition;
     private Point newPosition;
+    private final boolean nudge;
 
     public MoveElementAction(Main mainApp, PaintElement element, Point oldPosition, Point newPosition) {
+        this(mainApp, element, oldPosition, newPosition, false);
+    }
+
+    /**
+     * @param nudge true for an arrow-key step; consecutive nudges of one element undo as one step
+     */
+    public MoveElementAction(Main mainApp, PaintElement element, Point oldPosition, Point newPosition, boolean nudge) {
         this.mainApp = mainApp;
         this.element = element;
         this.oldPosition = new Point(oldPosition); // Store copies
         this.newPosition = new Point(newPosition); // Store copies
+        this.nudge = nudge;
     }
 
     @Override
     public void undo() {
-        element.setPosition(oldPosition.x, oldPosition.y);
-        // If the element moved was the currently selected one, ensure highlight updates
-        if (mainApp.getCurrentlySelectedElementInList() == element) {
-            mainApp.repaintDrawingPanel();
-        } else {
-            // If a different element is selected, or no element, still repaint
-            mainApp.repaintDrawingPanel();
-        }
-        // Optionally, re-select the element in the toolbox if its selection was tied to this action
-        // For a simple move, usually just repainting is enough.
-        // mainApp.selectElementInToolbox(element); // Example if needed
-        System.out.println("Undo Move: " + element.getDisplayName() + " to " + oldPosition);
+        moveTo(oldPosition);
     }
 
     @Override
     public void redo() {
-        element.setPosition(newPosition.x, newPosition.y);
-        if (mainApp.getCurrentlySelectedElementInList() == element) {
-            mainApp.repaintDrawingPanel();
-        } else {
-            mainApp.repaintDrawingPanel();
-        }
-        // mainApp.selectElementInToolbox(element); // Example if needed
-        System.out.println("Redo Move: " + element.getDisplayName() + " to " + newPosition);
+        moveTo(newPosition);
+    }
+
+    private void moveTo(Point position) {
+        element.setPosition(position.x, position.y);
+        mainApp.getSpatialIndex().update(element);
+        mainApp.repaintDrawingPanel();
     }
 
     @Override
     public String getActionName() {
-        return "Move " + element.getDisplayName();
+        return (nudge ? "Nudge " : "Move ") + element.getDisplayName();
+    }
+
+    @Override
+    public Collection<PaintElement> getAffectedElements() {
+        return Collections.singletonList(element);
+    }
+
+    @Override
+    public long getRetainedSize() {
+        return RetainedSize.ACTION + 2 * RetainedSize.POINT;
+    }
+
+    @Override
+    public boolean coalesce(UndoableAction next) {
+        if (!nudge || !(next instanceof MoveElementAction)) {
+            return false;
+        }
+        MoveElementAction move = (MoveElementAction) next;
+        if (!move.nudge || move.element != element || !move.oldPosition.equals(newPosition)) {
+            return false;
+        }
+        newPosition = new Point(move.newPosition);
+        return true;
     }
 }
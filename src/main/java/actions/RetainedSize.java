@@ -0,0 +1,66 @@
+package actions;
+
+import paintcomponents.BezierElement;
+import paintcomponents.FreehandElement;
+import paintcomponents.ImageAsset;
+import paintcomponents.ImageElement;
+import paintcomponents.PaintElement;
+import paintcomponents.PolygonElement;
+import paintcomponents.TextElement;
+
+/**
+ * Rough heap sizes of what undo actions hold on to, for
+ * {@link UndoableAction#getRetainedSize()}. Estimates, not measurements:
+ * they only need to rank actions and keep the history within its budget.
+ */
+final class RetainedSize {
+    // An action object with a few fields and references.
+    static final long ACTION = 64;
+    static final long POINT = 24;
+    private static final long ELEMENT = 96;
+    static final long REFERENCE = 8;
+    // Point coordinates plus the path and outline cached for drawing them.
+    private static final long STROKE_POINT = 24;
+    // A GlyphVector caches a good deal per character.
+    private static final long TEXT_CHAR = 48;
+
+    private RetainedSize() {
+    }
+
+    static long of(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    /**
+     * Counts an image by its encoded bytes; decoded bitmaps live in the
+     * bounded image cache and go when it evicts them.
+     */
+    static long of(PaintElement element) {
+        if (element == null) {
+            return 0;
+        }
+        long size = ELEMENT + of(element.getDisplayName());
+        if (element instanceof FreehandElement) {
+            size += STROKE_POINT * ((FreehandElement) element).getPointCount();
+        } else if (element instanceof BezierElement) {
+            size += STROKE_POINT * ((BezierElement) element).getPointCount();
+        } else if (element instanceof PolygonElement) {
+            size += 8L * ((PolygonElement) element).getPolygon().npoints;
+        } else if (element instanceof TextElement) {
+            String text = ((TextElement) element).getText();
+            size += of(text) + (text != null ? TEXT_CHAR * text.length() : 0);
+        } else if (element instanceof ImageElement) {
+            ImageAsset asset = ((ImageElement) element).getAsset();
+            size += asset != null ? asset.getEncodedLength() : 0;
+        }
+        return size;
+    }
+
+    static long of(Iterable<PaintElement> elements) {
+        long size = 0;
+        for (PaintElement element : elements) {
+            size += REFERENCE + of(element);
+        }
+        return size;
+    }
+}
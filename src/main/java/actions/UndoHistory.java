@@ -0,0 +1,159 @@
+package actions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Undo and redo stacks kept within a depth and a memory budget. Recording an
+ * action drops the oldest undo steps until both budgets hold again, keeping
+ * at least the newest; an action that continues the one before it, as
+ * decided by {@link UndoableAction#coalesce}, is merged into it instead of
+ * taking a step of its own.
+ *
+ * The budgets default to 1000 steps and an eighth of the maximum heap, and
+ * can be set with {@code -Dpfeasel.undoDepth=<steps>},
+ * {@code -Dpfeasel.undoHistoryMB=<megabytes>} or {@link #setLimits}.
+ */
+public final class UndoHistory {
+    private static final int DEFAULT_DEPTH = 1000;
+
+    private final Deque<Entry> undoStack = new ArrayDeque<>();
+    private final Deque<Entry> redoStack = new ArrayDeque<>();
+    private int maxDepth;
+    private long maxBytes;
+    private long retainedBytes;
+
+    public UndoHistory() {
+        this(Integer.getInteger("pfeasel.undoDepth", DEFAULT_DEPTH), budgetFromProperty());
+    }
+
+    public UndoHistory(int maxDepth, long maxBytes) {
+        setLimits(maxDepth, maxBytes);
+    }
+
+    /**
+     * @param maxDepth most undo steps to keep, at least 1
+     * @param maxBytes most estimated bytes for both stacks together
+     */
+    public void setLimits(int maxDepth, long maxBytes) {
+        this.maxDepth = Math.max(1, maxDepth);
+        this.maxBytes = Math.max(0, maxBytes);
+        trim();
+    }
+
+    /**
+     * Records an action that has just been done, clearing the redo stack.
+     *
+     * @return true if it was merged into the previous step
+     */
+    public boolean push(UndoableAction action) {
+        clearRedo();
+        Entry top = undoStack.peek();
+        if (top != null && top.action.coalesce(action)) {
+            retainedBytes -= top.size;
+            top.size = top.action.getRetainedSize();
+            retainedBytes += top.size;
+            trim();
+            return true;
+        }
+        Entry entry = new Entry(action);
+        undoStack.push(entry);
+        retainedBytes += entry.size;
+        trim();
+        return false;
+    }
+
+    /**
+     * Undoes the newest step and moves it to the redo stack.
+     *
+     * @return the action undone, or null if there was nothing to undo
+     */
+    public UndoableAction undo() {
+        Entry entry = undoStack.poll();
+        if (entry == null) {
+            return null;
+        }
+        entry.action.undo();
+        redoStack.push(entry);
+        return entry.action;
+    }
+
+    /**
+     * Redoes the newest undone step and moves it back to the undo stack.
+     *
+     * @return the action redone, or null if there was nothing to redo
+     */
+    public UndoableAction redo() {
+        Entry entry = redoStack.poll();
+        if (entry == null) {
+            return null;
+        }
+        entry.action.redo();
+        undoStack.push(entry);
+        return entry.action;
+    }
+
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    public int getUndoDepth() {
+        return undoStack.size();
+    }
+
+    public int getRedoDepth() {
+        return redoStack.size();
+    }
+
+    /**
+     * @return the estimated bytes both stacks keep alive
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public void clear() {
+        undoStack.clear();
+        clearRedo();
+        retainedBytes = 0;
+    }
+
+    private void clearRedo() {
+        for (Entry entry : redoStack) {
+            retainedBytes -= entry.size;
+        }
+        redoStack.clear();
+    }
+
+    private void trim() {
+        Iterator<Entry> oldestFirst = undoStack.descendingIterator();
+        while ((undoStack.size() > maxDepth || retainedBytes > maxBytes) && undoStack.size() > 1 && oldestFirst.hasNext()) {
+            retainedBytes -= oldestFirst.next().size;
+            oldestFirst.remove();
+        }
+    }
+
+    private static long budgetFromProperty() {
+        Long megabytes = Long.getLong("pfeasel.undoHistoryMB");
+        return megabytes != null ? megabytes * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    /**
+     * An action with the size it was counted at, so the total stays exact
+     * however the action's own estimate is computed.
+     */
+    private static final class Entry {
+        final UndoableAction action;
+        long size;
+
+        Entry(UndoableAction action) {
+            this.action = action;
+            this.size = action.getRetainedSize();
+        }
+    }
+}
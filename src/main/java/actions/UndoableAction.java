@@ -1,5 +1,10 @@
 package actions;
 
+import java.util.Collection;
+import java.util.Collections;
+
+import paintcomponents.PaintElement;
+
 public interface UndoableAction {
     /**
      * Reverts the action.
@@ -16,4 +21,33 @@ public interface UndoableAction {
      * @return A string describing the action.
      */
     String getActionName();
+
+    /**
+     * Elements the action changes in place, as opposed to adding, removing or
+     * reordering them; these have to be written out again after it runs.
+     * @return The modified elements, empty by default.
+     */
+    default Collection<PaintElement> getAffectedElements() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Estimates the memory the undo history keeps alive through this action
+     * beyond the drawing itself, such as elements it removed or names it
+     * replaced. Should not change while the action is in the history.
+     * @return Approximate bytes.
+     */
+    default long getRetainedSize() {
+        return RetainedSize.ACTION;
+    }
+
+    /**
+     * Folds an action done right after this one into it, so the two undo as
+     * one step; for instance repeated renames of one element.
+     * @param next The action just done.
+     * @return True if this action now also covers {@code next}, which is then not recorded.
+     */
+    default boolean coalesce(UndoableAction next) {
+        return false;
+    }
 }
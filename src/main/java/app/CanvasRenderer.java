@@ -1,22 +1,85 @@
 package app;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Stroke;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
+import paintcomponents.StrokeCache;
 import ui.GridManager;
 
 public class CanvasRenderer {
     private static final int RESIZE_HANDLE_SIZE = 8;
+    // Selection outline is drawn 2px outside the bounds; handles straddle the edges.
+    private static final int SELECTION_REPAINT_MARGIN = RESIZE_HANDLE_SIZE / 2 + 2;
+    // Slack for glyph overhang and anti-aliasing beyond an element's logical bounds.
+    private static final int CULL_MARGIN = 2;
+    private static final float[] OVERLAY_DASH = {4f, 4f};
+    private static final Color PREVIEW_OUTLINE_COLOR = new Color(0, 120, 255, 128);
+    private static final Color HANDLE_BORDER_COLOR = new Color(0, 70, 190);
+
+    private int lastDrawnCount;
+    private int lastCulledCount;
+
+    // Layered compositing state; compositingElements is non-null while a drag is in progress.
+    private Set<PaintElement> compositingElements;
+    private BufferedImage belowLayer;
+    private BufferedImage aboveLayer;
+    private int layerTopLiveIndex;
+    private int layerBottomLiveIndex;
+    private int layerWidth;
+    private int layerHeight;
+    private double layerScaleX;
+    private double layerScaleY;
+    private boolean layerAntiAliasing;
+    private int layerElementCount;
+    // RS interface overlay and grid pre-composited into one image while both are shown.
+    private BufferedImage backgroundLayer;
+    private BufferedImage backgroundRsImage;
+    private int backgroundGridWidth;
+    private int backgroundGridHeight;
+    private Color backgroundGridColor;
+    private int backgroundWidth;
+    private int backgroundHeight;
+    private double backgroundScaleX;
+    private double backgroundScaleY;
+    private Object backgroundAntialiasing;
+    // Freehand stroke in progress: segments [0, freehandRasterizedCount) are already in freehandLayer.
+    private BufferedImage freehandLayer;
+    private int freehandRasterizedCount;
+    private int freehandStartX;
+    private int freehandStartY;
+    private Color freehandColor;
+    private float freehandStrokeWidth;
+    private int freehandLayerWidth;
+    private int freehandLayerHeight;
+    private double freehandScaleX;
+    private double freehandScaleY;
+    private boolean freehandAntiAliasing;
+    // Drag offsets not yet applied to the elements themselves; cleared by endCompositing().
+    private final Map<PaintElement, Point> pendingTranslations = new IdentityHashMap<>();
+    // Scratch bounds for culling, so testing an element against the clip allocates nothing.
+    private final Rectangle cullBounds = new Rectangle();
 
     public void render(
             Graphics2D g2d,
@@ -35,47 +98,38 @@ public class CanvasRenderer {
             Rectangle currentDrawingRectangle,
             boolean isDrawingPolygon,
             List<Point> currentPolygonPoints,
-            List<Point> currentFreehandPoints,
+            PointBuffer currentFreehandPoints,
             boolean isDrawingBezier,
             List<Point> currentBezierPoints) {
 
-        if (antiAliasingActive) {
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        } else {
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
-        }
-
-        if (rsInterfaceVisible && rsInterfaceImage != null) {
-            g2d.drawImage(rsInterfaceImage, 0, 0, null);
-        }
+        applyRenderingHints(g2d, antiAliasingActive);
 
-        if (gridManager.isGridVisible()) {
-            gridManager.drawGrid(g2d, canvasWidth, canvasHeight);
-        }
+        boolean layered = compositingElements != null
+                && prepareLayers(g2d, toolboxFrame, gridManager, paintElements, canvasWidth, canvasHeight,
+                        antiAliasingActive, rsInterfaceVisible, rsInterfaceImage);
 
-        for (int i = paintElements.size() - 1; i >= 0; i--) {
-            PaintElement element = paintElements.get(i);
-            if (element != null) {
-                if (element.hasShadow() && toolboxFrame != null) {
-                    element.drawShadow(g2d, toolboxFrame.getShadowColor(), toolboxFrame.getShadowXOffset(), toolboxFrame.getShadowYOffset());
-                }
-                element.draw(g2d);
-            }
+        Rectangle clip = g2d.getClipBounds();
+        lastDrawnCount = 0;
+        lastCulledCount = 0;
+        if (layered) {
+            blitLayer(g2d, belowLayer);
+            drawElements(g2d, toolboxFrame, paintElements, layerBottomLiveIndex, layerTopLiveIndex, clip);
+            blitLayer(g2d, aboveLayer);
+        } else {
+            drawBackground(g2d, gridManager, canvasWidth, canvasHeight, rsInterfaceVisible, rsInterfaceImage);
+            drawElements(g2d, toolboxFrame, paintElements, paintElements.size() - 1, 0, clip);
         }
 
         if (selectedElements != null && !selectedElements.isEmpty()) {
             g2d.setColor(Color.BLUE);
-            float[] dash = {4f, 4f};
             Stroke oldStroke = g2d.getStroke();
-            g2d.setStroke(new BasicStroke(1.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, dash, 0f));
+            g2d.setStroke(StrokeCache.get(1.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, OVERLAY_DASH, 0f));
 
             for (PaintElement selectedElement : selectedElements) {
                 if (selectedElement == null) {
                     continue;
                 }
-                Rectangle bounds = selectedElement.getBounds();
+                Rectangle bounds = getDisplayedBounds(selectedElement);
                 if (bounds != null) {
                     g2d.drawRect(bounds.x - 2, bounds.y - 2, bounds.width + 4, bounds.height + 4);
                 }
@@ -87,7 +141,7 @@ public class CanvasRenderer {
                     && toolboxFrame.getSelectedTool() == ToolboxFrame.ToolType.MOVE
                     && selectedElements.size() == 1
                     && selectedElementForMove != null) {
-                Rectangle bounds = selectedElementForMove.getBounds();
+                Rectangle bounds = getDisplayedBounds(selectedElementForMove);
                 if (selectedElementForMove.isResizable() && bounds != null && bounds.width > 0 && bounds.height > 0) {
                     drawResizeHandles(g2d, bounds);
                 }
@@ -102,10 +156,9 @@ public class CanvasRenderer {
                     || previewTool == ToolboxFrame.ToolType.CIRCLE
                     || previewTool == ToolboxFrame.ToolType.LINE)
                     && currentDrawingRectangle != null) {
-                g2d.setColor(new Color(0, 120, 255, 128));
-                float[] dash = {4f, 4f};
+                g2d.setColor(PREVIEW_OUTLINE_COLOR);
                 Stroke oldStroke = g2d.getStroke();
-                g2d.setStroke(new BasicStroke(1.2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, dash, 0f));
+                g2d.setStroke(StrokeCache.get(1.2f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, OVERLAY_DASH, 0f));
                 g2d.drawRect(currentDrawingRectangle.x - 2, currentDrawingRectangle.y - 2,
                         currentDrawingRectangle.width + 4, currentDrawingRectangle.height + 4);
                 g2d.setStroke(oldStroke);
@@ -118,7 +171,7 @@ public class CanvasRenderer {
             if (previewTool == ToolboxFrame.ToolType.LINE) {
                 if (toolboxFrame.isStrokeEnabled() && previewStrokeColor != null && previewStrokeWidth > 0) {
                     g2d.setColor(previewStrokeColor);
-                    g2d.setStroke(new BasicStroke(previewStrokeWidth));
+                    g2d.setStroke(StrokeCache.get(previewStrokeWidth));
                     g2d.drawLine(startPoint.x, startPoint.y, endPoint.x, endPoint.y);
                 }
             } else if (currentDrawingRectangle != null) {
@@ -145,7 +198,7 @@ public class CanvasRenderer {
 
                 if (toolboxFrame.isStrokeEnabled() && previewStrokeColor != null && previewStrokeWidth > 0) {
                     g2d.setColor(previewStrokeColor);
-                    g2d.setStroke(new BasicStroke(previewStrokeWidth));
+                    g2d.setStroke(StrokeCache.get(previewStrokeWidth));
                     switch (previewTool) {
                         case RECTANGLE:
                             g2d.drawRect(currentDrawingRectangle.x, currentDrawingRectangle.y,
@@ -169,6 +222,9 @@ public class CanvasRenderer {
 
         if (isDrawingPolygon && currentPolygonPoints != null && !currentPolygonPoints.isEmpty()) {
             g2d.setColor(Color.GRAY);
+            // Reset whatever stroke the last element left behind so the rubber band
+            // stays inside the region DrawingPanel repaints for it.
+            g2d.setStroke(StrokeCache.get(1f));
             Point prevPoint = null;
             ToolboxFrame.ToolType currentTool = (toolboxFrame != null) ? toolboxFrame.getSelectedTool() : null;
 
@@ -198,16 +254,19 @@ public class CanvasRenderer {
                 && toolboxFrame.getSelectedTool() == ToolboxFrame.ToolType.FREEHAND) {
             Color strokeColor = toolboxFrame.isStrokeEnabled() ? toolboxFrame.getStrokeColor() : Color.BLACK;
             float strokeWidth = (float) toolboxFrame.getCurrentStrokeWidth();
-            g2d.setColor(strokeColor);
-            g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            GeneralPath previewPath = new GeneralPath();
-            Point fp = currentFreehandPoints.get(0);
-            previewPath.moveTo(fp.x, fp.y);
-            for (int i = 1; i < currentFreehandPoints.size(); i++) {
-                Point fp2 = currentFreehandPoints.get(i);
-                previewPath.lineTo(fp2.x, fp2.y);
+            if (!drawFreehandPreviewLayer(g2d, currentFreehandPoints, strokeColor, strokeWidth,
+                    canvasWidth, canvasHeight, antiAliasingActive)) {
+                g2d.setColor(strokeColor);
+                g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                GeneralPath previewPath = new GeneralPath(GeneralPath.WIND_NON_ZERO, currentFreehandPoints.size());
+                previewPath.moveTo(currentFreehandPoints.getX(0), currentFreehandPoints.getY(0));
+                for (int i = 1; i < currentFreehandPoints.size(); i++) {
+                    previewPath.lineTo(currentFreehandPoints.getX(i), currentFreehandPoints.getY(i));
+                }
+                g2d.draw(previewPath);
             }
-            g2d.draw(previewPath);
+        } else if (freehandLayer != null) {
+            discardFreehandLayer();
         }
 
         // Bezier in-progress preview
@@ -223,14 +282,13 @@ public class CanvasRenderer {
 
             if (previewPoints.size() >= 2) {
                 g2d.setColor(strokeColor);
-                g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
                 g2d.draw(buildCatmullRomPath(previewPoints, 0, 0));
             } else if (endPoint != null) {
                 // Only one placed point — dashed line to mouse
                 Stroke oldStroke = g2d.getStroke();
-                float[] dash = {4f, 4f};
                 g2d.setColor(Color.GRAY);
-                g2d.setStroke(new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, dash, 0f));
+                g2d.setStroke(StrokeCache.get(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, OVERLAY_DASH, 0f));
                 Point sole = currentBezierPoints.get(0);
                 g2d.drawLine(sole.x, sole.y, endPoint.x, endPoint.y);
                 g2d.setStroke(oldStroke);
@@ -250,7 +308,452 @@ public class CanvasRenderer {
         }
     }
 
-    private static GeneralPath buildCatmullRomPath(List<Point> pts, int dx, int dy) {
+    /**
+     * Starts layered compositing for an interactive drag or resize. Until
+     * {@link #endCompositing()} is called, render() rasterizes the static
+     * elements below and above the moving ones into two cached images once and
+     * then only draws the moving range live between them on each frame.
+     *
+     * @param movingElements the elements that change while compositing is active
+     */
+    public void beginCompositing(Collection<PaintElement> movingElements) {
+        compositingElements = Collections.newSetFromMap(new IdentityHashMap<>());
+        compositingElements.addAll(movingElements);
+        discardLayers();
+    }
+
+    /**
+     * Stops layered compositing and releases the cached layer images.
+     */
+    public void endCompositing() {
+        compositingElements = null;
+        pendingTranslations.clear();
+        discardLayers();
+    }
+
+    /**
+     * Draws and measures a moving element shifted by (dx, dy) without touching
+     * its geometry, so a group drag costs the same per frame whatever the
+     * elements contain. The caller applies the final offset with setPosition
+     * after {@link #endCompositing()}, which discards all pending offsets.
+     */
+    public void setPendingTranslation(PaintElement element, int dx, int dy) {
+        if (dx == 0 && dy == 0) {
+            pendingTranslations.remove(element);
+        } else {
+            pendingTranslations.put(element, new Point(dx, dy));
+        }
+    }
+
+    /**
+     * Returns the element bounds as currently shown, including any pending translation.
+     */
+    public Rectangle getDisplayedBounds(PaintElement element) {
+        return displayedBounds(element, new Rectangle());
+    }
+
+    private Rectangle displayedBounds(PaintElement element, Rectangle into) {
+        element.getBounds(into);
+        Point translation = pendingTranslations.isEmpty() ? null : pendingTranslations.get(element);
+        if (translation != null) {
+            into.translate(translation.x, translation.y);
+        }
+        return into;
+    }
+
+    /**
+     * Makes the next frame rebuild the cached layers, for changes to static
+     * elements that happen during compositing, such as an image finishing decoding.
+     */
+    public void invalidateLayers() {
+        discardLayers();
+    }
+
+    public boolean isCompositing() {
+        return compositingElements != null;
+    }
+
+    private void discardLayers() {
+        if (belowLayer != null) {
+            belowLayer.flush();
+        }
+        if (aboveLayer != null) {
+            aboveLayer.flush();
+        }
+        belowLayer = null;
+        aboveLayer = null;
+    }
+
+    /**
+     * Makes sure the cached layers match the current frame, rebuilding them when
+     * the canvas size, device scale, anti-aliasing or element count changed.
+     *
+     * @return false when layered drawing cannot be used for this frame
+     */
+    private boolean prepareLayers(
+            Graphics2D g2d,
+            ToolboxFrame toolboxFrame,
+            GridManager gridManager,
+            List<PaintElement> paintElements,
+            int canvasWidth,
+            int canvasHeight,
+            boolean antiAliasingActive,
+            boolean rsInterfaceVisible,
+            BufferedImage rsInterfaceImage) {
+        AffineTransform transform = g2d.getTransform();
+        if (canvasWidth <= 0 || canvasHeight <= 0 || transform.getShearX() != 0 || transform.getShearY() != 0) {
+            return false;
+        }
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        if (belowLayer != null
+                && layerWidth == canvasWidth
+                && layerHeight == canvasHeight
+                && layerScaleX == scaleX
+                && layerScaleY == scaleY
+                && layerAntiAliasing == antiAliasingActive
+                && layerElementCount == paintElements.size()) {
+            return true;
+        }
+
+        int top = -1;
+        int bottom = -1;
+        for (int i = 0; i < paintElements.size(); i++) {
+            if (compositingElements.contains(paintElements.get(i))) {
+                if (top < 0) {
+                    top = i;
+                }
+                bottom = i;
+            }
+        }
+        discardLayers();
+        if (top < 0) {
+            return false;
+        }
+
+        GraphicsConfiguration config = g2d.getDeviceConfiguration();
+        belowLayer = createLayer(config, canvasWidth, canvasHeight, scaleX, scaleY);
+        Graphics2D below = belowLayer.createGraphics();
+        below.scale(scaleX, scaleY);
+        applyRenderingHints(below, antiAliasingActive);
+        drawBackground(below, gridManager, canvasWidth, canvasHeight, rsInterfaceVisible, rsInterfaceImage);
+        drawElements(below, toolboxFrame, paintElements, paintElements.size() - 1, bottom + 1, null);
+        below.dispose();
+
+        if (top > 0) {
+            aboveLayer = createLayer(config, canvasWidth, canvasHeight, scaleX, scaleY);
+            Graphics2D above = aboveLayer.createGraphics();
+            above.scale(scaleX, scaleY);
+            applyRenderingHints(above, antiAliasingActive);
+            drawElements(above, toolboxFrame, paintElements, top - 1, 0, null);
+            above.dispose();
+        }
+
+        layerTopLiveIndex = top;
+        layerBottomLiveIndex = bottom;
+        layerWidth = canvasWidth;
+        layerHeight = canvasHeight;
+        layerScaleX = scaleX;
+        layerScaleY = scaleY;
+        layerAntiAliasing = antiAliasingActive;
+        layerElementCount = paintElements.size();
+        return true;
+    }
+
+    /**
+     * Draws the in-progress freehand stroke from a cached raster, first drawing
+     * only the segments added since the previous frame into it. The stroke is
+     * rasterized opaque and blended with the stroke alpha on the way out, so
+     * overlapping segment caps do not darken a translucent stroke.
+     *
+     * @return false when the raster cannot be used and the caller must draw the path itself
+     */
+    private boolean drawFreehandPreviewLayer(
+            Graphics2D g2d,
+            PointBuffer points,
+            Color strokeColor,
+            float strokeWidth,
+            int canvasWidth,
+            int canvasHeight,
+            boolean antiAliasingActive) {
+        AffineTransform transform = g2d.getTransform();
+        if (canvasWidth <= 0 || canvasHeight <= 0 || transform.getShearX() != 0 || transform.getShearY() != 0) {
+            return false;
+        }
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        if (freehandLayer == null
+                || points.size() < freehandRasterizedCount
+                || points.getX(0) != freehandStartX
+                || points.getY(0) != freehandStartY
+                || !strokeColor.equals(freehandColor)
+                || strokeWidth != freehandStrokeWidth
+                || canvasWidth != freehandLayerWidth
+                || canvasHeight != freehandLayerHeight
+                || scaleX != freehandScaleX
+                || scaleY != freehandScaleY
+                || antiAliasingActive != freehandAntiAliasing) {
+            discardFreehandLayer();
+            freehandLayer = createLayer(g2d.getDeviceConfiguration(), canvasWidth, canvasHeight, scaleX, scaleY);
+            freehandRasterizedCount = 1;
+            freehandStartX = points.getX(0);
+            freehandStartY = points.getY(0);
+            freehandColor = strokeColor;
+            freehandStrokeWidth = strokeWidth;
+            freehandLayerWidth = canvasWidth;
+            freehandLayerHeight = canvasHeight;
+            freehandScaleX = scaleX;
+            freehandScaleY = scaleY;
+            freehandAntiAliasing = antiAliasingActive;
+        }
+
+        if (points.size() > freehandRasterizedCount) {
+            Graphics2D layer = freehandLayer.createGraphics();
+            layer.scale(scaleX, scaleY);
+            applyRenderingHints(layer, antiAliasingActive);
+            layer.setColor(new Color(strokeColor.getRGB() | 0xff000000));
+            layer.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            Line2D.Float segment = new Line2D.Float();
+            for (int i = freehandRasterizedCount; i < points.size(); i++) {
+                segment.setLine(points.getX(i - 1), points.getY(i - 1), points.getX(i), points.getY(i));
+                layer.draw(segment);
+            }
+            layer.dispose();
+            freehandRasterizedCount = points.size();
+        }
+
+        Composite savedComposite = g2d.getComposite();
+        if (strokeColor.getAlpha() < 255) {
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, strokeColor.getAlpha() / 255f));
+        }
+        blitLayer(g2d, freehandLayer);
+        g2d.setComposite(savedComposite);
+        return true;
+    }
+
+    private void discardFreehandLayer() {
+        if (freehandLayer != null) {
+            freehandLayer.flush();
+        }
+        freehandLayer = null;
+        freehandColor = null;
+        freehandRasterizedCount = 0;
+    }
+
+    private static BufferedImage createLayer(GraphicsConfiguration config, int width, int height, double scaleX, double scaleY) {
+        int pixelWidth = (int) Math.ceil(width * scaleX);
+        int pixelHeight = (int) Math.ceil(height * scaleY);
+        if (config != null) {
+            return config.createCompatibleImage(pixelWidth, pixelHeight, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    /**
+     * Draws a cached layer 1:1 onto device pixels, keeping the current translation.
+     */
+    private static void blitLayer(Graphics2D g2d, BufferedImage layer) {
+        if (layer == null) {
+            return;
+        }
+        AffineTransform saved = g2d.getTransform();
+        g2d.setTransform(AffineTransform.getTranslateInstance(saved.getTranslateX(), saved.getTranslateY()));
+        g2d.drawImage(layer, 0, 0, null);
+        g2d.setTransform(saved);
+    }
+
+    private static void applyRenderingHints(Graphics2D g2d, boolean antiAliasingActive) {
+        if (antiAliasingActive) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        } else {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        }
+    }
+
+    private void drawBackground(
+            Graphics2D g2d,
+            GridManager gridManager,
+            int canvasWidth,
+            int canvasHeight,
+            boolean rsInterfaceVisible,
+            BufferedImage rsInterfaceImage) {
+        boolean rsVisible = rsInterfaceVisible && rsInterfaceImage != null;
+        if (rsVisible && gridManager.isGridVisible() && drawCachedBackground(g2d, gridManager, canvasWidth, canvasHeight, rsInterfaceImage)) {
+            return;
+        }
+        if (backgroundLayer != null) {
+            discardBackgroundLayer();
+        }
+
+        if (rsVisible) {
+            g2d.drawImage(rsInterfaceImage, 0, 0, null);
+        }
+
+        if (gridManager.isGridVisible()) {
+            gridManager.drawGrid(g2d, canvasWidth, canvasHeight);
+        }
+    }
+
+    /**
+     * Blits the RS interface overlay and grid from one cached image, rebuilt
+     * when the overlay, grid settings, canvas size, device scale or
+     * anti-aliasing change.
+     *
+     * @return false when the cache cannot be used for this transform
+     */
+    private boolean drawCachedBackground(
+            Graphics2D g2d,
+            GridManager gridManager,
+            int canvasWidth,
+            int canvasHeight,
+            BufferedImage rsInterfaceImage) {
+        AffineTransform transform = g2d.getTransform();
+        if (canvasWidth <= 0 || canvasHeight <= 0 || transform.getShearX() != 0 || transform.getShearY() != 0) {
+            return false;
+        }
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        Object antialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        if (backgroundLayer == null
+                || backgroundRsImage != rsInterfaceImage
+                || backgroundGridWidth != gridManager.getGridWidth()
+                || backgroundGridHeight != gridManager.getGridHeight()
+                || !gridManager.getGridColor().equals(backgroundGridColor)
+                || backgroundWidth != canvasWidth
+                || backgroundHeight != canvasHeight
+                || backgroundScaleX != scaleX
+                || backgroundScaleY != scaleY
+                || backgroundAntialiasing != antialiasing) {
+            discardBackgroundLayer();
+            backgroundLayer = createLayer(g2d.getDeviceConfiguration(), canvasWidth, canvasHeight, scaleX, scaleY);
+            Graphics2D background = backgroundLayer.createGraphics();
+            background.scale(scaleX, scaleY);
+            if (antialiasing != null) {
+                background.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+            }
+            background.drawImage(rsInterfaceImage, 0, 0, null);
+            gridManager.drawGrid(background, canvasWidth, canvasHeight);
+            background.dispose();
+            backgroundRsImage = rsInterfaceImage;
+            backgroundGridWidth = gridManager.getGridWidth();
+            backgroundGridHeight = gridManager.getGridHeight();
+            backgroundGridColor = gridManager.getGridColor();
+            backgroundWidth = canvasWidth;
+            backgroundHeight = canvasHeight;
+            backgroundScaleX = scaleX;
+            backgroundScaleY = scaleY;
+            backgroundAntialiasing = antialiasing;
+        }
+        blitLayer(g2d, backgroundLayer);
+        return true;
+    }
+
+    private void discardBackgroundLayer() {
+        if (backgroundLayer != null) {
+            backgroundLayer.flush();
+        }
+        backgroundLayer = null;
+        backgroundRsImage = null;
+        backgroundGridColor = null;
+    }
+
+    /**
+     * Draws elements back to front, from {@code fromIndex} down to {@code toIndex}
+     * inclusive, skipping those entirely outside {@code clip} when one is given.
+     */
+    private void drawElements(
+            Graphics2D g2d,
+            ToolboxFrame toolboxFrame,
+            List<PaintElement> paintElements,
+            int fromIndex,
+            int toIndex,
+            Rectangle clip) {
+        for (int i = fromIndex; i >= toIndex; i--) {
+            PaintElement element = paintElements.get(i);
+            if (element != null) {
+                if (clip != null && isOutsideClip(element, toolboxFrame, clip)) {
+                    lastCulledCount++;
+                    continue;
+                }
+                lastDrawnCount++;
+                Point translation = pendingTranslations.isEmpty() ? null : pendingTranslations.get(element);
+                if (translation != null) {
+                    g2d.translate(translation.x, translation.y);
+                }
+                if (element.hasShadow() && toolboxFrame != null) {
+                    element.drawShadow(g2d, toolboxFrame.getShadowColor(), toolboxFrame.getShadowXOffset(), toolboxFrame.getShadowYOffset());
+                }
+                element.draw(g2d);
+                if (translation != null) {
+                    g2d.translate(-translation.x, -translation.y);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements drawn by the last {@link #render} call
+     */
+    public int getLastDrawnCount() {
+        return lastDrawnCount;
+    }
+
+    /**
+     * @return the number of elements skipped by the last {@link #render} call
+     *         because they lay entirely outside the clip
+     */
+    public int getLastCulledCount() {
+        return lastCulledCount;
+    }
+
+    private boolean isOutsideClip(PaintElement element, ToolboxFrame toolboxFrame, Rectangle clip) {
+        Rectangle painted = paintedBounds(element, toolboxFrame, cullBounds);
+        painted.grow(CULL_MARGIN, CULL_MARGIN);
+        return !painted.intersects(clip);
+    }
+
+    /**
+     * Returns the area an element paints into, padded for its stroke and,
+     * when enabled, its drop shadow.
+     */
+    public Rectangle getPaintedBounds(PaintElement element, ToolboxFrame toolboxFrame) {
+        if (element == null) {
+            return null;
+        }
+        return paintedBounds(element, toolboxFrame, new Rectangle());
+    }
+
+    private Rectangle paintedBounds(PaintElement element, ToolboxFrame toolboxFrame, Rectangle into) {
+        Rectangle bounds = displayedBounds(element, into);
+        int pad = (int) Math.ceil(element.getStrokeWidth() / 2.0) + 1;
+        bounds.grow(pad, pad);
+        if (element.hasShadow() && toolboxFrame != null) {
+            int dx = toolboxFrame.getShadowXOffset();
+            int dy = toolboxFrame.getShadowYOffset();
+            bounds.setBounds(
+                    bounds.x + Math.min(dx, 0),
+                    bounds.y + Math.min(dy, 0),
+                    bounds.width + Math.abs(dx),
+                    bounds.height + Math.abs(dy));
+        }
+        return bounds;
+    }
+
+    /**
+     * Returns the area that must be repainted when an element changes, which also
+     * covers its selection outline and resize handles.
+     */
+    public Rectangle getRepaintBounds(PaintElement element, ToolboxFrame toolboxFrame) {
+        Rectangle painted = getPaintedBounds(element, toolboxFrame);
+        if (painted != null) {
+            painted.grow(SELECTION_REPAINT_MARGIN, SELECTION_REPAINT_MARGIN);
+        }
+        return painted;
+    }
+
+    static GeneralPath buildCatmullRomPath(List<Point> pts, int dx, int dy) {
         GeneralPath path = new GeneralPath();
         if (pts.size() < 2) return path;
         int n = pts.size();
@@ -295,7 +798,7 @@ public class CanvasRenderer {
             g2d.fillRect(handle.x, handle.y, handle.width, handle.height);
         }
 
-        g2d.setColor(new Color(0, 70, 190));
+        g2d.setColor(HANDLE_BORDER_COLOR);
         for (Rectangle handle : handles) {
             g2d.drawRect(handle.x, handle.y, handle.width, handle.height);
         }
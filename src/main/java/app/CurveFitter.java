@@ -0,0 +1,229 @@
+package app;
+
+import paintcomponents.PointBuffer;
+
+/**
+ * Fits a sampled stroke with a chain of cubic Bezier segments, after
+ * Schneider's "An Algorithm for Automatically Fitting Digitized Curves"
+ * (Graphics Gems, 1990). A segment is split at the worst-fitting sample until
+ * every sample lies within the error bound.
+ */
+public final class CurveFitter {
+    private static final int MAX_REPARAMETERIZE_ITERATIONS = 4;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double errorSq;
+    private final PointBuffer result;
+
+    private CurveFitter(PointBuffer points, double error) {
+        int n = points.size();
+        xs = new double[n];
+        ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = points.getX(i);
+            ys[i] = points.getY(i);
+        }
+        errorSq = error * error;
+        result = new PointBuffer(n);
+    }
+
+    /**
+     * Fits the points with cubic segments.
+     *
+     * @param points the sampled stroke, at least two points
+     * @param error maximum distance in pixels between a sample and the curve
+     * @return the start point followed by one (control 1, control 2, end)
+     *         triple per segment
+     */
+    public static PointBuffer fit(PointBuffer points, double error) {
+        CurveFitter fitter = new CurveFitter(points, error);
+        int last = points.size() - 1;
+        fitter.result.add(points.getX(0), points.getY(0));
+        if (last < 1) {
+            return fitter.result;
+        }
+        double[] leftTangent = fitter.tangent(0, 1);
+        double[] rightTangent = fitter.tangent(last, last - 1);
+        fitter.fitCubic(0, last, leftTangent, rightTangent);
+        return fitter.result;
+    }
+
+    private void fitCubic(int first, int last, double[] tHat1, double[] tHat2) {
+        if (last - first == 1) {
+            double dist = Math.hypot(xs[last] - xs[first], ys[last] - ys[first]) / 3.0;
+            emit(new double[] {
+                    xs[first], ys[first],
+                    xs[first] + tHat1[0] * dist, ys[first] + tHat1[1] * dist,
+                    xs[last] + tHat2[0] * dist, ys[last] + tHat2[1] * dist,
+                    xs[last], ys[last]
+            });
+            return;
+        }
+
+        double[] u = chordLengthParameterize(first, last);
+        double[] bezier = generateBezier(first, last, u, tHat1, tHat2);
+        int[] split = new int[1];
+        double maxError = computeMaxError(first, last, bezier, u, split);
+        if (maxError < errorSq) {
+            emit(bezier);
+            return;
+        }
+
+        // Close enough that a better parameterization may fix it without splitting.
+        if (maxError < errorSq * 4) {
+            for (int i = 0; i < MAX_REPARAMETERIZE_ITERATIONS; i++) {
+                u = reparameterize(first, last, u, bezier);
+                bezier = generateBezier(first, last, u, tHat1, tHat2);
+                maxError = computeMaxError(first, last, bezier, u, split);
+                if (maxError < errorSq) {
+                    emit(bezier);
+                    return;
+                }
+            }
+        }
+
+        int splitPoint = split[0];
+        double[] tHatCenter = centerTangent(splitPoint);
+        fitCubic(first, splitPoint, tHat1, tHatCenter);
+        fitCubic(splitPoint, last, new double[] { -tHatCenter[0], -tHatCenter[1] }, tHat2);
+    }
+
+    private void emit(double[] bezier) {
+        for (int i = 2; i < 8; i += 2) {
+            result.add((int) Math.round(bezier[i]), (int) Math.round(bezier[i + 1]));
+        }
+    }
+
+    /**
+     * Least-squares control points for fixed end points and end tangents.
+     */
+    private double[] generateBezier(int first, int last, double[] u, double[] tHat1, double[] tHat2) {
+        double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+        double fx = xs[first], fy = ys[first];
+        double lx = xs[last], ly = ys[last];
+        for (int i = 0; i < u.length; i++) {
+            double t = u[i];
+            double mt = 1 - t;
+            double b0 = mt * mt * mt;
+            double b1 = 3 * t * mt * mt;
+            double b2 = 3 * t * t * mt;
+            double b3 = t * t * t;
+            double a1x = tHat1[0] * b1, a1y = tHat1[1] * b1;
+            double a2x = tHat2[0] * b2, a2y = tHat2[1] * b2;
+            c00 += a1x * a1x + a1y * a1y;
+            c01 += a1x * a2x + a1y * a2y;
+            c11 += a2x * a2x + a2y * a2y;
+            double tmpX = xs[first + i] - (fx * (b0 + b1) + lx * (b2 + b3));
+            double tmpY = ys[first + i] - (fy * (b0 + b1) + ly * (b2 + b3));
+            x0 += a1x * tmpX + a1y * tmpY;
+            x1 += a2x * tmpX + a2y * tmpY;
+        }
+
+        double det = c00 * c11 - c01 * c01;
+        double alpha1 = det == 0 ? 0 : (x0 * c11 - x1 * c01) / det;
+        double alpha2 = det == 0 ? 0 : (c00 * x1 - c01 * x0) / det;
+
+        double segLength = Math.hypot(lx - fx, ly - fy);
+        double epsilon = 1.0e-6 * segLength;
+        if (alpha1 < epsilon || alpha2 < epsilon) {
+            // Degenerate solve; fall back to the Wu/Barsky heuristic.
+            alpha1 = alpha2 = segLength / 3.0;
+        }
+        return new double[] {
+                fx, fy,
+                fx + tHat1[0] * alpha1, fy + tHat1[1] * alpha1,
+                lx + tHat2[0] * alpha2, ly + tHat2[1] * alpha2,
+                lx, ly
+        };
+    }
+
+    private double[] reparameterize(int first, int last, double[] u, double[] bezier) {
+        double[] refined = new double[u.length];
+        for (int i = 0; i < u.length; i++) {
+            refined[i] = newtonRaphsonRoot(bezier, xs[first + i], ys[first + i], u[i]);
+        }
+        return refined;
+    }
+
+    private static double newtonRaphsonRoot(double[] q, double px, double py, double u) {
+        double[] q1 = new double[6];
+        for (int i = 0; i < 3; i++) {
+            q1[2 * i] = (q[2 * i + 2] - q[2 * i]) * 3;
+            q1[2 * i + 1] = (q[2 * i + 3] - q[2 * i + 1]) * 3;
+        }
+        double[] q2 = new double[4];
+        for (int i = 0; i < 2; i++) {
+            q2[2 * i] = (q1[2 * i + 2] - q1[2 * i]) * 2;
+            q2[2 * i + 1] = (q1[2 * i + 3] - q1[2 * i + 1]) * 2;
+        }
+        double[] p = evaluate(q, 3, u);
+        double[] d1 = evaluate(q1, 2, u);
+        double[] d2 = evaluate(q2, 1, u);
+        double numerator = (p[0] - px) * d1[0] + (p[1] - py) * d1[1];
+        double denominator = d1[0] * d1[0] + d1[1] * d1[1] + (p[0] - px) * d2[0] + (p[1] - py) * d2[1];
+        if (denominator == 0) {
+            return u;
+        }
+        return Math.min(1, Math.max(0, u - numerator / denominator));
+    }
+
+    /**
+     * Evaluates a Bezier curve of the given degree at t with de Casteljau's algorithm.
+     */
+    private static double[] evaluate(double[] control, int degree, double t) {
+        double[] tmp = new double[(degree + 1) * 2];
+        System.arraycopy(control, 0, tmp, 0, tmp.length);
+        for (int i = 1; i <= degree; i++) {
+            for (int j = 0; j <= degree - i; j++) {
+                tmp[2 * j] = (1 - t) * tmp[2 * j] + t * tmp[2 * j + 2];
+                tmp[2 * j + 1] = (1 - t) * tmp[2 * j + 1] + t * tmp[2 * j + 3];
+            }
+        }
+        return new double[] { tmp[0], tmp[1] };
+    }
+
+    private double computeMaxError(int first, int last, double[] bezier, double[] u, int[] splitPoint) {
+        double maxDist = 0;
+        splitPoint[0] = (last - first + 1) / 2 + first;
+        for (int i = first + 1; i < last; i++) {
+            double[] p = evaluate(bezier, 3, u[i - first]);
+            double dx = p[0] - xs[i];
+            double dy = p[1] - ys[i];
+            double dist = dx * dx + dy * dy;
+            if (dist >= maxDist) {
+                maxDist = dist;
+                splitPoint[0] = i;
+            }
+        }
+        return maxDist;
+    }
+
+    private double[] chordLengthParameterize(int first, int last) {
+        double[] u = new double[last - first + 1];
+        for (int i = first + 1; i <= last; i++) {
+            u[i - first] = u[i - first - 1] + Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+        }
+        double total = u[u.length - 1];
+        for (int i = 1; i < u.length; i++) {
+            u[i] = total == 0 ? (double) i / (u.length - 1) : u[i] / total;
+        }
+        return u;
+    }
+
+    private double[] tangent(int from, int to) {
+        return normalize(xs[to] - xs[from], ys[to] - ys[from]);
+    }
+
+    private double[] centerTangent(int center) {
+        return normalize(xs[center - 1] - xs[center + 1], ys[center - 1] - ys[center + 1]);
+    }
+
+    private static double[] normalize(double dx, double dy) {
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return new double[] { 0, 0 };
+        }
+        return new double[] { dx / length, dy / length };
+    }
+}
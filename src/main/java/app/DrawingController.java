@@ -4,6 +4,8 @@ import java.awt.Cursor;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -12,6 +14,7 @@ import java.util.Set;
 
 import javax.swing.JPanel;
 
+import actions.MoveElementAction;
 import paintcomponents.PaintElement;
 
 public class DrawingController {
@@ -27,6 +30,7 @@ public class DrawingController {
     private ResizeHandle activeResizeHandle = ResizeHandle.NONE;
     private Rectangle resizeStartBounds;
     private boolean minSizeReachedDuringResize;
+    private boolean compositing;
 
     private enum ResizeHandle {
         NONE,
@@ -88,6 +92,7 @@ public class DrawingController {
     }
 
     public void clearSelection(JPanel panel) {
+        stopCompositing();
         selectedElements.clear();
         dragOffsets.clear();
         selectedElementForMove = null;
@@ -118,30 +123,29 @@ public class DrawingController {
 
             Rectangle resizedBounds = calculateResizedBounds(resizeStartBounds, activeResizeHandle, resizePoint);
             minSizeReachedDuringResize = (resizedBounds.width <= MIN_RESIZE_DIMENSION || resizedBounds.height <= MIN_RESIZE_DIMENSION);
+            startCompositing();
+            Rectangle dirty = host.getElementRepaintBounds(selectedElementForMove);
             selectedElementForMove.resizeToBounds(resizedBounds);
+            host.getSpatialIndex().update(selectedElementForMove);
             updateMoveCursor(currentPoint, panel);
-            host.repaintDrawingPanel();
+            host.repaintDrawingPanel(unionRepaintBounds(dirty, selectedElements));
             return;
         }
 
         if (!dragOffsets.isEmpty()) {
+            startCompositing();
+            Rectangle dirty = unionRepaintBounds(null, selectedElements);
+            // Elements stay where they were picked up; the renderer shows them shifted
+            // until handleMouseReleased applies the final position.
             for (PaintElement element : selectedElements) {
-                Point offset = dragOffsets.get(element);
-                if (offset == null) {
+                Point target = getDragTargetPosition(element, currentPoint);
+                if (target == null) {
                     continue;
                 }
-
-                int newX = currentPoint.x - offset.x;
-                int newY = currentPoint.y - offset.y;
-
-                if (host.isSnapToGridActive() && host.getGridManager().isGridVisible()) {
-                    Point snappedPosition = snapPointToGrid(new Point(newX, newY));
-                    element.setPosition(snappedPosition.x, snappedPosition.y);
-                } else {
-                    element.setPosition(newX, newY);
-                }
+                Point position = element.getPosition();
+                host.setPendingTranslation(element, target.x - position.x, target.y - position.y);
             }
-            host.repaintDrawingPanel();
+            host.repaintDrawingPanel(unionRepaintBounds(dirty, selectedElements));
         }
     }
 
@@ -192,7 +196,9 @@ public class DrawingController {
     }
 
     public void handleMouseReleased(Point currentPoint, JPanel panel) {
+        stopCompositing();
         if (selectedElementForMove != null && activeResizeHandle != ResizeHandle.NONE) {
+            boolean resized = resizeStartBounds != null && !resizeStartBounds.equals(selectedElementForMove.getBounds());
             activeResizeHandle = ResizeHandle.NONE;
             resizeStartBounds = null;
             if (minSizeReachedDuringResize) {
@@ -201,27 +207,25 @@ public class DrawingController {
                 host.setLastActionStatus("Resized " + host.getElementDisplayName(selectedElementForMove));
             }
             minSizeReachedDuringResize = false;
+            if (resized) {
+                host.elementsEdited(Collections.singletonList(selectedElementForMove));
+            }
             updateMoveCursor(currentPoint, panel);
             host.repaintDrawingPanel();
             return;
         }
 
         if (!dragOffsets.isEmpty()) {
-            for (PaintElement element : selectedElements) {
-                Point offset = dragOffsets.get(element);
-                if (offset == null) {
-                    continue;
+            // A click without a drag leaves every element where it was and records nothing.
+            host.runAsOneStep("Move " + selectedElements.size() + " Elements", () -> {
+                for (PaintElement element : selectedElements) {
+                    Point finalElementPos = getDragTargetPosition(element, currentPoint);
+                    Point position = element.getPosition();
+                    if (finalElementPos != null && !finalElementPos.equals(position)) {
+                        recordMove(new MoveElementAction(host, element, position, finalElementPos));
+                    }
                 }
-
-                int newX = currentPoint.x - offset.x;
-                int newY = currentPoint.y - offset.y;
-                Point finalElementPos = new Point(newX, newY);
-
-                if (host.isSnapToGridActive() && host.getGridManager().isGridVisible()) {
-                    finalElementPos = snapPointToGrid(finalElementPos);
-                }
-                element.setPosition(finalElementPos.x, finalElementPos.y);
-            }
+            });
         }
 
         dragOffset = null;
@@ -230,14 +234,85 @@ public class DrawingController {
         host.repaintDrawingPanel();
     }
 
+    /**
+     * Moves the selection by the given offset as one undoable step; repeated
+     * nudges of a single element undo together.
+     *
+     * @return false if nothing is selected or a drag or resize is in progress
+     */
+    public boolean nudgeSelection(int dx, int dy) {
+        if (selectedElements.isEmpty() || !dragOffsets.isEmpty() || activeResizeHandle != ResizeHandle.NONE) {
+            return false;
+        }
+        host.runAsOneStep("Nudge " + selectedElements.size() + " Elements", () -> {
+            for (PaintElement element : selectedElements) {
+                Point position = element.getPosition();
+                recordMove(new MoveElementAction(host, element, position, new Point(position.x + dx, position.y + dy), true));
+            }
+        });
+        return true;
+    }
+
+    private void recordMove(MoveElementAction move) {
+        move.redo();
+        host.addUndoableAction(move);
+    }
+
+    /**
+     * Returns where a dragged element ends up for the given mouse position,
+     * snapped to the grid when snapping is active.
+     */
+    private Point getDragTargetPosition(PaintElement element, Point currentPoint) {
+        Point offset = dragOffsets.get(element);
+        if (offset == null) {
+            return null;
+        }
+        Point target = new Point(currentPoint.x - offset.x, currentPoint.y - offset.y);
+        if (host.isSnapToGridActive() && host.getGridManager().isGridVisible()) {
+            target = snapPointToGrid(target);
+        }
+        return target;
+    }
+
     private PaintElement findTopmostElementAt(Point point, List<PaintElement> paintElements) {
-        for (int i = 0; i < paintElements.size(); i++) {
-            PaintElement element = paintElements.get(i);
-            if (element != null && element.contains(point)) {
-                return element;
+        return host.getSpatialIndex().findTopmostAt(point, paintElements);
+    }
+
+    /**
+     * Switches the renderer to layered compositing for the rest of the drag, so
+     * each frame only redraws the selection between two cached layers.
+     */
+    private void startCompositing() {
+        if (!compositing) {
+            compositing = true;
+            host.beginInteractiveCompositing(selectedElements);
+        }
+    }
+
+    private void stopCompositing() {
+        if (compositing) {
+            compositing = false;
+            host.endInteractiveCompositing();
+        }
+    }
+
+    /**
+     * Adds the repaint area of each element to {@code dirty}, covering both the
+     * element and its selection decorations.
+     */
+    private Rectangle unionRepaintBounds(Rectangle dirty, Collection<PaintElement> elements) {
+        for (PaintElement element : elements) {
+            Rectangle bounds = host.getElementRepaintBounds(element);
+            if (bounds == null) {
+                continue;
+            }
+            if (dirty == null) {
+                dirty = bounds;
+            } else {
+                dirty.add(bounds);
             }
         }
-        return null;
+        return dirty;
     }
 
     private Point snapPointToGrid(Point p) {
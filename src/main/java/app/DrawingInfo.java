@@ -0,0 +1,62 @@
+package app;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * What the header of a binary drawing says about it, read by
+ * {@link ProjectIOService#readInfo} without decoding any elements.
+ */
+public final class DrawingInfo {
+    private final int elementCount;
+    private final int canvasWidth;
+    private final int canvasHeight;
+    private final long created;
+    private final long modified;
+    private final BufferedImage thumbnail;
+
+    DrawingInfo(int elementCount, int canvasWidth, int canvasHeight, long created, long modified,
+                BufferedImage thumbnail) {
+        this.elementCount = elementCount;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.created = created;
+        this.modified = modified;
+        this.thumbnail = thumbnail;
+    }
+
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * @return the width of the canvas the drawing was saved from, or 0 if not recorded
+     */
+    public int getCanvasWidth() {
+        return canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return canvasHeight;
+    }
+
+    /**
+     * @return when the file was first saved, in milliseconds since the epoch
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return when the file was last saved, in milliseconds since the epoch
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * @return a small picture of the drawing, or null if the file has none
+     */
+    public BufferedImage getThumbnail() {
+        return thumbnail;
+    }
+}
@@ -20,13 +20,17 @@ import javax.swing.JPanel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import paintcomponents.ImageCache;
 import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
 import paintcomponents.PolygonElement;
 import paintcomponents.TextElement;
 
 public class DrawingPanel extends JPanel {
     private static final Logger logger = LoggerFactory.getLogger(DrawingPanel.class);
     private static final int FREEHAND_MIN_DIST = 3;
+    // Extra room around preview geometry for dashed outlines and anti-aliasing.
+    private static final int PREVIEW_REPAINT_MARGIN = 4;
 
     private final Main host;
     private final DrawingController drawingController;
@@ -39,7 +43,9 @@ public class DrawingPanel extends JPanel {
     private Rectangle currentDrawingRectangle;
     private final List<Point> currentPolygonPoints = new ArrayList<>();
     private boolean isDrawingPolygon = false;
-    private final List<Point> currentFreehandPoints = new ArrayList<>();
+    private final PointBuffer currentFreehandPoints = new PointBuffer(256);
+    // Decimates the stroke while it is captured; the raw points above only feed the preview.
+    private StrokeSimplifier freehandSimplifier;
     private boolean isDrawingFreehand = false;
     private final List<Point> currentBezierPoints = new ArrayList<>();
     private boolean isDrawingBezier = false;
@@ -69,10 +75,11 @@ public class DrawingPanel extends JPanel {
                 }
 
                 if (selectedTool == ToolboxFrame.ToolType.POLYGON || selectedTool == ToolboxFrame.ToolType.BEZIER) {
+                    Point previousEndPoint = endPoint;
                     endPoint = host.isSnapToGridActive() && host.getGridManager().isGridVisible()
                             ? snapPointToGrid(currentMousePoint)
                             : currentMousePoint;
-                    repaint();
+                    repaintRubberBand(previousEndPoint, endPoint);
                 }
             }
 
@@ -82,6 +89,7 @@ public class DrawingPanel extends JPanel {
                 ToolboxFrame toolboxFrame = host.getToolboxFrame();
                 ToolboxFrame.ToolType selectedTool = (toolboxFrame != null) ? toolboxFrame.getSelectedTool() : null;
                 Point currentMousePoint = e.getPoint();
+                Point previousEndPoint = endPoint;
 
                 endPoint = host.isSnapToGridActive() && host.getGridManager().isGridVisible()
                         ? snapPointToGrid(currentMousePoint)
@@ -90,19 +98,22 @@ public class DrawingPanel extends JPanel {
                 if (selectedTool == ToolboxFrame.ToolType.MOVE) {
                     drawingController.handleMouseDragged(currentMousePoint, DrawingPanel.this);
                 } else if (selectedTool == ToolboxFrame.ToolType.LINE) {
-                    repaint();
+                    repaintPreviewRegion(spanOf(startPoint, previousEndPoint), spanOf(startPoint, endPoint));
                 } else if ((selectedTool == ToolboxFrame.ToolType.RECTANGLE
                         || selectedTool == ToolboxFrame.ToolType.ROUND_RECTANGLE
                         || selectedTool == ToolboxFrame.ToolType.CIRCLE)
                         && dragStartPoint != null) {
+                    Rectangle previousRectangle = currentDrawingRectangle;
                     currentDrawingRectangle = shapeCreationService.calculateBounds(dragStartPoint, endPoint);
-                    repaint();
+                    repaintPreviewRegion(previousRectangle, currentDrawingRectangle);
                 } else if (selectedTool == ToolboxFrame.ToolType.FREEHAND && isDrawingFreehand) {
                     Point last = currentFreehandPoints.isEmpty() ? null : currentFreehandPoints.get(currentFreehandPoints.size() - 1);
                     if (last == null || endPoint.distance(last) >= FREEHAND_MIN_DIST) {
-                        currentFreehandPoints.add(new Point(endPoint));
+                        currentFreehandPoints.add(endPoint.x, endPoint.y);
+                        freehandSimplifier.add(endPoint.x, endPoint.y);
+                        // Only the newest segment changes; the rest of the stroke is already on screen.
+                        repaintPreviewRegion(spanOf(last, endPoint), null);
                     }
-                    repaint();
                 }
             }
         });
@@ -120,6 +131,7 @@ public class DrawingPanel extends JPanel {
                 Point currentPoint = e.getPoint();
 
                 if (selectedTool == ToolboxFrame.ToolType.MOVE) {
+                    requestFocusInWindow();
                     drawingController.handleMousePressed(currentPoint, DrawingPanel.this, e.isControlDown());
                     return;
                 }
@@ -144,7 +156,9 @@ public class DrawingPanel extends JPanel {
                 } else if (selectedTool == ToolboxFrame.ToolType.FREEHAND) {
                     isDrawingFreehand = true;
                     currentFreehandPoints.clear();
-                    currentFreehandPoints.add(new Point(startPoint));
+                    currentFreehandPoints.add(startPoint.x, startPoint.y);
+                    freehandSimplifier = new StrokeSimplifier(toolboxFrame.getStrokeFidelity().getTolerance());
+                    freehandSimplifier.add(startPoint.x, startPoint.y);
                 }
             }
 
@@ -164,7 +178,7 @@ public class DrawingPanel extends JPanel {
 
                 if (selectedTool == ToolboxFrame.ToolType.FREEHAND) {
                     if (isDrawingFreehand && currentFreehandPoints.size() >= 2 && toolboxFrame != null) {
-                        PaintElement fe = shapeCreationService.createFreehandElement(currentFreehandPoints, toolboxFrame);
+                        PaintElement fe = shapeCreationService.createFreehandElement(freehandSimplifier, toolboxFrame);
                         fe.setShadow(toolboxFrame.isShadowEnabled());
                         String uniqueDisplayName = host.generateUniqueDisplayName(fe.getName());
                         fe.setDisplayName(uniqueDisplayName);
@@ -172,6 +186,7 @@ public class DrawingPanel extends JPanel {
                         host.setLastActionStatus("Drew " + uniqueDisplayName);
                     }
                     currentFreehandPoints.clear();
+                    freehandSimplifier = null;
                     isDrawingFreehand = false;
                     startPoint = null;
                     repaint();
@@ -332,6 +347,32 @@ public class DrawingPanel extends JPanel {
             public void keyPressed(KeyEvent e) {
                 logger.info("[KeyAdapter] keyPressed: code={} char='{}' isDrawingBezier={} isDrawingFreehand={}",
                         e.getKeyCode(), e.getKeyChar(), isDrawingBezier, isDrawingFreehand);
+                ToolboxFrame toolboxFrame = host.getToolboxFrame();
+                if (toolboxFrame != null && toolboxFrame.getSelectedTool() == ToolboxFrame.ToolType.MOVE) {
+                    int step = e.isShiftDown() ? 10 : 1;
+                    int dx = 0;
+                    int dy = 0;
+                    switch (e.getKeyCode()) {
+                        case KeyEvent.VK_LEFT:
+                            dx = -step;
+                            break;
+                        case KeyEvent.VK_RIGHT:
+                            dx = step;
+                            break;
+                        case KeyEvent.VK_UP:
+                            dy = -step;
+                            break;
+                        case KeyEvent.VK_DOWN:
+                            dy = step;
+                            break;
+                        default:
+                            break;
+                    }
+                    if ((dx != 0 || dy != 0) && drawingController.nudgeSelection(dx, dy)) {
+                        e.consume();
+                        return;
+                    }
+                }
                 if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
                     if (isDrawingBezier) {
                         isDrawingBezier = false;
@@ -341,6 +382,7 @@ public class DrawingPanel extends JPanel {
                     } else if (isDrawingFreehand) {
                         isDrawingFreehand = false;
                         currentFreehandPoints.clear();
+                        freehandSimplifier = null;
                         startPoint = null;
                         repaint();
                     }
@@ -391,6 +433,77 @@ public class DrawingPanel extends JPanel {
         repaint();
     }
 
+    /**
+     * Repaints the union of the previous and current preview geometry, padded
+     * for the preview stroke. Falls back to a full repaint when neither is known.
+     */
+    private void repaintPreviewRegion(Rectangle before, Rectangle after) {
+        if (before == null && after == null) {
+            repaint();
+            return;
+        }
+        Rectangle dirty = new Rectangle(before != null ? before : after);
+        if (before != null && after != null) {
+            dirty.add(after);
+        }
+        ToolboxFrame toolboxFrame = host.getToolboxFrame();
+        float strokeWidth = toolboxFrame != null ? toolboxFrame.getCurrentStrokeWidth() : 1f;
+        int pad = (int) Math.ceil(strokeWidth / 2.0) + PREVIEW_REPAINT_MARGIN;
+        dirty.grow(pad, pad);
+        repaint(dirty);
+    }
+
+    private void repaintRubberBand(Point previousEndPoint, Point newEndPoint) {
+        Rectangle before = null;
+        Rectangle after = null;
+        if (isDrawingPolygon && !currentPolygonPoints.isEmpty()) {
+            Point anchor = currentPolygonPoints.get(currentPolygonPoints.size() - 1);
+            before = spanOf(anchor, previousEndPoint);
+            after = spanOf(anchor, newEndPoint);
+        }
+        if (isDrawingBezier && !currentBezierPoints.isEmpty()) {
+            before = union(before, bezierPreviewTailBounds(previousEndPoint));
+            after = union(after, bezierPreviewTailBounds(newEndPoint));
+        }
+        if (before != null || after != null) {
+            repaintPreviewRegion(before, after);
+        }
+    }
+
+    /**
+     * Bounds of the part of the bezier preview that depends on the live mouse
+     * position: the last two Catmull-Rom segments before it.
+     */
+    private Rectangle bezierPreviewTailBounds(Point previewEnd) {
+        int n = currentBezierPoints.size();
+        Point lastAnchor = currentBezierPoints.get(n - 1);
+        if (previewEnd == null) {
+            return spanOf(lastAnchor, lastAnchor);
+        }
+        List<Point> tail = new ArrayList<>(currentBezierPoints.subList(Math.max(0, n - 3), n));
+        tail.add(previewEnd);
+        return CanvasRenderer.buildCatmullRomPath(tail, 0, 0).getBounds();
+    }
+
+    private static Rectangle spanOf(Point a, Point b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Rectangle span = new Rectangle(a);
+        span.add(b);
+        return span;
+    }
+
+    private static Rectangle union(Rectangle a, Rectangle b) {
+        if (a == null) {
+            return b;
+        }
+        if (b != null) {
+            a.add(b);
+        }
+        return a;
+    }
+
     private Point snapPointToGrid(Point p) {
         int snappedX = (int) (Math.round((double) p.x / host.getGridManager().getGridWidth()) * host.getGridManager().getGridWidth());
         int snappedY = (int) (Math.round((double) p.y / host.getGridManager().getGridHeight()) * host.getGridManager().getGridHeight());
@@ -422,5 +535,11 @@ public class DrawingPanel extends JPanel {
                 currentFreehandPoints,
                 isDrawingBezier,
                 currentBezierPoints);
+
+        if (host.isDebugLogVisible()) {
+            host.setDebugLogText("Drawn: " + canvasRenderer.getLastDrawnCount()
+                    + ", culled: " + canvasRenderer.getLastCulledCount()
+                    + ", " + ImageCache.getStats());
+        }
     }
 }
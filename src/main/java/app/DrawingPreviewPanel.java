@@ -0,0 +1,96 @@
+package app;
+
+import javax.swing.*;
+import java.awt.*;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * File chooser accessory showing the thumbnail and header details of the
+ * selected drawing. Only the header is read, off the Event Dispatch Thread,
+ * so moving through a folder of drawings stays instant.
+ */
+public class DrawingPreviewPanel extends JPanel implements PropertyChangeListener {
+    private final ProjectIOService projectIOService;
+    private final JLabel thumbnailLabel = new JLabel("", SwingConstants.CENTER);
+    private final JLabel detailsLabel = new JLabel();
+    private final DateFormat dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+    private SwingWorker<DrawingInfo, Void> pending;
+
+    public DrawingPreviewPanel(JFileChooser chooser, ProjectIOService projectIOService) {
+        super(new BorderLayout(0, 5));
+        this.projectIOService = projectIOService;
+        setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        thumbnailLabel.setPreferredSize(new Dimension(PfdFormat.THUMBNAIL_SIZE + 2, PfdFormat.THUMBNAIL_SIZE + 2));
+        thumbnailLabel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        detailsLabel.setVerticalAlignment(SwingConstants.TOP);
+        add(thumbnailLabel, BorderLayout.NORTH);
+        add(detailsLabel, BorderLayout.CENTER);
+        showNothing("No file selected");
+        chooser.addPropertyChangeListener(JFileChooser.SELECTED_FILE_CHANGED_PROPERTY, this);
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent event) {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+        File file = (File) event.getNewValue();
+        if (file == null || !file.isFile()) {
+            showNothing("No file selected");
+            return;
+        }
+        SwingWorker<DrawingInfo, Void> worker = new SwingWorker<DrawingInfo, Void>() {
+            @Override
+            protected DrawingInfo doInBackground() throws Exception {
+                return projectIOService.readInfo(file);
+            }
+
+            @Override
+            protected void done() {
+                // A later selection has replaced this one.
+                if (pending != this) {
+                    return;
+                }
+                pending = null;
+                try {
+                    show(get());
+                } catch (ExecutionException e) {
+                    showNothing("Not a readable drawing");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        pending = worker;
+        worker.execute();
+    }
+
+    private void show(DrawingInfo info) {
+        if (info == null) {
+            showNothing("No preview available");
+            return;
+        }
+        thumbnailLabel.setText(info.getThumbnail() != null ? "" : "No thumbnail");
+        thumbnailLabel.setIcon(info.getThumbnail() != null ? new ImageIcon(info.getThumbnail()) : null);
+        StringBuilder details = new StringBuilder("<html>");
+        details.append(info.getElementCount()).append(info.getElementCount() == 1 ? " element" : " elements");
+        if (info.getCanvasWidth() > 0 && info.getCanvasHeight() > 0) {
+            details.append("<br>").append(info.getCanvasWidth()).append(" x ").append(info.getCanvasHeight());
+        }
+        details.append("<br>Created ").append(dateFormat.format(new Date(info.getCreated())));
+        details.append("<br>Modified ").append(dateFormat.format(new Date(info.getModified())));
+        detailsLabel.setText(details.append("</html>").toString());
+    }
+
+    private void showNothing(String message) {
+        thumbnailLabel.setIcon(null);
+        thumbnailLabel.setText(message);
+        detailsLabel.setText(" ");
+    }
+}
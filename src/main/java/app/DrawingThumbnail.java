@@ -0,0 +1,321 @@
+package app;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import paintcomponents.ImageElement;
+import paintcomponents.PaintElement;
+
+/**
+ * The header thumbnail of a saved drawing, kept with its layout so the next
+ * save redraws only the pixels that changed. Each segment records the
+ * thumbnail pixels its elements cover, one packed box per element, which is
+ * how a later save knows what an edited or removed element covered before.
+ */
+final class DrawingThumbnail {
+    final Dimension canvasSize;
+    final BufferedImage image;
+
+    private DrawingThumbnail(Dimension canvasSize, BufferedImage image) {
+        this.canvasSize = canvasSize;
+        this.image = image;
+    }
+
+    /**
+     * What one save has to draw, worked out on the Event Dispatch Thread and
+     * drawn on the save thread.
+     */
+    static final class Update {
+        private final Dimension canvasSize;
+        // The previous thumbnail to draw over, or null to draw the whole drawing.
+        private final DrawingThumbnail base;
+        // Thumbnail pixels to redraw over the base, row by row; null with no base.
+        private final boolean[] dirty;
+        // Copies of the elements covering those pixels, topmost first.
+        private final List<PaintElement> elements;
+
+        private Update(Dimension canvasSize, DrawingThumbnail base, boolean[] dirty, List<PaintElement> elements) {
+            this.canvasSize = canvasSize;
+            this.base = base;
+            this.dirty = dirty;
+            this.elements = elements;
+        }
+    }
+
+    /**
+     * Works out what changed since the previous thumbnail: elements added,
+     * edited, removed or moved in the stacking order. Records the boxes of
+     * every piece for the layout being written, and copies only the elements
+     * that cover a changed pixel. Without a previous thumbnail for this canvas
+     * size, as after loading, every element is copied. Call on the Event
+     * Dispatch Thread.
+     *
+     * @param previous the layout the plan keeps segments of, or null
+     * @param edited   elements changed in place since the previous save
+     */
+    static Update plan(PfdLayout previous, List<PfdLayout.Piece> pieces, Set<PaintElement> edited,
+                       Dimension canvasSize) {
+        Dimension canvas = new Dimension(canvasSize);
+        DrawingThumbnail base = previous != null ? previous.thumbnail : null;
+        if (base != null && !base.canvasSize.equals(canvas)) {
+            base = null;
+        }
+        Rectangle scratch = new Rectangle();
+        int total = 0;
+        for (PfdLayout.Piece piece : pieces) {
+            int[] kept = piece.kept != null ? piece.kept.thumbnailBoxes : null;
+            piece.thumbnailBoxes = base != null && kept != null ? kept : boxesOf(piece.elements, canvas, scratch);
+            total += piece.size();
+        }
+        if (base == null) {
+            List<PaintElement> elements = new ArrayList<>(total);
+            for (PfdLayout.Piece piece : pieces) {
+                for (int k = 0; k < piece.size(); k++) {
+                    elements.add(copyOf(piece, k));
+                }
+            }
+            return new Update(canvas, null, null, elements);
+        }
+
+        int previousTotal = 0;
+        for (PfdLayout.Segment segment : previous.segments) {
+            previousTotal += segment.elements.length;
+        }
+        Map<PaintElement, Integer> before = new IdentityHashMap<>(previousTotal * 2);
+        int[] oldBoxes = new int[previousTotal];
+        int n = 0;
+        for (PfdLayout.Segment segment : previous.segments) {
+            for (int k = 0; k < segment.elements.length; k++, n++) {
+                before.put(segment.elements[k], n);
+                oldBoxes[n] = segment.thumbnailBoxes[k];
+            }
+        }
+        Dimension size = sizeFor(canvas);
+        boolean[] dirty = new boolean[size.width * size.height];
+        boolean[] present = new boolean[previousTotal];
+        int[] order = new int[total];
+        int i = 0;
+        for (PfdLayout.Piece piece : pieces) {
+            for (int k = 0; k < piece.size(); k++, i++) {
+                PaintElement element = piece.elements[k];
+                Integer index = before.get(element);
+                if (index != null) {
+                    present[index] = true;
+                }
+                if (index == null || edited.contains(element)) {
+                    mark(dirty, size, piece.thumbnailBoxes[k]);
+                    if (index != null) {
+                        mark(dirty, size, oldBoxes[index]);
+                    }
+                    order[i] = -1;
+                } else {
+                    order[i] = index;
+                }
+            }
+        }
+        for (int index = 0; index < present.length; index++) {
+            if (!present[index]) {
+                mark(dirty, size, oldBoxes[index]);
+            }
+        }
+        // Of two elements that swapped places, at least one falls outside the longest run still in order.
+        boolean[] inOrder = longestIncreasingRun(order);
+        i = 0;
+        for (PfdLayout.Piece piece : pieces) {
+            for (int k = 0; k < piece.size(); k++, i++) {
+                if (order[i] >= 0 && !inOrder[i]) {
+                    mark(dirty, size, piece.thumbnailBoxes[k]);
+                }
+            }
+        }
+
+        int[] covered = summedArea(dirty, size);
+        List<PaintElement> elements = new ArrayList<>();
+        for (PfdLayout.Piece piece : pieces) {
+            for (int k = 0; k < piece.size(); k++) {
+                if (touches(covered, size, piece.thumbnailBoxes[k])) {
+                    elements.add(copyOf(piece, k));
+                }
+            }
+        }
+        return new Update(canvas, base, dirty, elements);
+    }
+
+    /**
+     * Draws an update. Images are drawn only if their bitmap is already
+     * cached, so other bitmaps are neither decoded nor evicted for it. Drop
+     * shadows are left out, as their look is a setting of the editor rather
+     * than part of the file.
+     */
+    static DrawingThumbnail render(Update update) {
+        Dimension size = sizeFor(update.canvasSize);
+        BufferedImage drawn = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = drawn.createGraphics();
+        try {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, size.width, size.height);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            if (update.base != null) {
+                // Nothing outside the changed pixels is kept, so it need not be drawn.
+                g2d.clip(dirtyBounds(update.dirty, size));
+            }
+            double scale = scaleFor(update.canvasSize);
+            g2d.scale(scale, scale);
+            for (int i = update.elements.size() - 1; i >= 0; i--) {
+                PaintElement element = update.elements.get(i);
+                if (element instanceof ImageElement) {
+                    ((ImageElement) element).drawIfCached(g2d);
+                } else {
+                    element.draw(g2d);
+                }
+            }
+        } finally {
+            g2d.dispose();
+        }
+        if (update.base == null) {
+            return new DrawingThumbnail(update.canvasSize, drawn);
+        }
+        // Only the changed pixels are taken from the redraw; elements reaching past them are cut off there.
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        image.setData(update.base.image.getRaster());
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] redrawn = ((DataBufferInt) drawn.getRaster().getDataBuffer()).getData();
+        for (int p = 0; p < pixels.length; p++) {
+            if (update.dirty[p]) {
+                pixels[p] = redrawn[p];
+            }
+        }
+        return new DrawingThumbnail(update.canvasSize, image);
+    }
+
+    private static Rectangle dirtyBounds(boolean[] dirty, Dimension size) {
+        int left = size.width, top = size.height, right = 0, bottom = 0;
+        for (int p = 0; p < dirty.length; p++) {
+            if (dirty[p]) {
+                int x = p % size.width, y = p / size.width;
+                left = Math.min(left, x);
+                top = Math.min(top, y);
+                right = Math.max(right, x + 1);
+                bottom = Math.max(bottom, y + 1);
+            }
+        }
+        return left < right ? new Rectangle(left, top, right - left, bottom - top) : new Rectangle();
+    }
+
+    private static PaintElement copyOf(PfdLayout.Piece piece, int k) {
+        return piece.snapshot != null ? piece.snapshot.get(k) : ProjectIOService.copyOf(piece.elements[k]);
+    }
+
+    /**
+     * Packs the thumbnail pixels each element may touch, stroke and
+     * anti-aliasing included, as left, top, right and bottom bytes, the right
+     * and bottom exclusive; {@link PfdFormat#THUMBNAIL_SIZE} fits in a byte.
+     */
+    private static int[] boxesOf(PaintElement[] elements, Dimension canvas, Rectangle scratch) {
+        Dimension size = sizeFor(canvas);
+        double scale = scaleFor(canvas);
+        int[] boxes = new int[elements.length];
+        for (int k = 0; k < elements.length; k++) {
+            Rectangle bounds = elements[k].getBounds(scratch);
+            double pad = Math.ceil(elements[k].getStrokeWidth() / 2.0) + 1;
+            int left = clamp((int) Math.floor((bounds.x - pad) * scale) - 1, size.width);
+            int top = clamp((int) Math.floor((bounds.y - pad) * scale) - 1, size.height);
+            int right = clamp((int) Math.ceil((bounds.x + bounds.width + pad) * scale) + 1, size.width);
+            int bottom = clamp((int) Math.ceil((bounds.y + bounds.height + pad) * scale) + 1, size.height);
+            boxes[k] = left < right && top < bottom ? left << 24 | top << 16 | right << 8 | bottom : 0;
+        }
+        return boxes;
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    private static void mark(boolean[] dirty, Dimension size, int box) {
+        int left = box >>> 24, top = (box >>> 16) & 0xFF, right = (box >>> 8) & 0xFF, bottom = box & 0xFF;
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                dirty[y * size.width + x] = true;
+            }
+        }
+    }
+
+    /**
+     * @return counts of dirty pixels above and left of each corner, so a box can be tested in constant time
+     */
+    private static int[] summedArea(boolean[] dirty, Dimension size) {
+        int stride = size.width + 1;
+        int[] sums = new int[stride * (size.height + 1)];
+        for (int y = 0; y < size.height; y++) {
+            int row = 0;
+            for (int x = 0; x < size.width; x++) {
+                row += dirty[y * size.width + x] ? 1 : 0;
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + row;
+            }
+        }
+        return sums;
+    }
+
+    private static boolean touches(int[] sums, Dimension size, int box) {
+        int stride = size.width + 1;
+        int left = box >>> 24, top = (box >>> 16) & 0xFF, right = (box >>> 8) & 0xFF, bottom = box & 0xFF;
+        return sums[bottom * stride + right] - sums[top * stride + right]
+                - sums[bottom * stride + left] + sums[top * stride + left] > 0;
+    }
+
+    /**
+     * Marks the longest run of entries that are still in increasing order,
+     * skipping negative ones, in O(n log n).
+     */
+    private static boolean[] longestIncreasingRun(int[] order) {
+        int[] tails = new int[order.length];
+        int[] previous = new int[order.length];
+        int length = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] < 0) {
+                continue;
+            }
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (order[tails[middle]] < order[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] inRun = new boolean[order.length];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            inRun[i] = true;
+        }
+        return inRun;
+    }
+
+    private static double scaleFor(Dimension canvasSize) {
+        return Math.min(1.0, (double) PfdFormat.THUMBNAIL_SIZE / Math.max(1, Math.max(canvasSize.width, canvasSize.height)));
+    }
+
+    private static Dimension sizeFor(Dimension canvasSize) {
+        double scale = scaleFor(canvasSize);
+        return new Dimension(Math.max(1, (int) Math.round(canvasSize.width * scale)),
+                Math.max(1, (int) Math.round(canvasSize.height * scale)));
+    }
+}
@@ -0,0 +1,217 @@
+package app;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import paintcomponents.PaintElement;
+
+/**
+ * Uniform-grid spatial hash over element bounds. Hit tests ask it for the few
+ * elements whose bounds cover a point and only run the exact {@code contains}
+ * check on those, topmost first.
+ *
+ * Z-order follows the paint element list (index 0 is topmost). Ranks are cached
+ * and rebuilt lazily after {@link #invalidateZOrder()}.
+ */
+public class ElementSpatialIndex {
+    private static final int CELL_SIZE = 64;
+    // Elements spanning more cells than this are kept in a flat list instead.
+    private static final int MAX_CELLS_PER_ELEMENT = 256;
+    // contains() on stroked elements accepts points a few pixels outside getBounds().
+    private static final int HIT_TOLERANCE = 5;
+
+    private final Map<Long, List<PaintElement>> cells = new HashMap<>();
+    private final List<PaintElement> oversized = new ArrayList<>();
+    private final Map<PaintElement, Rectangle> indexedBounds = new IdentityHashMap<>();
+    private final Map<PaintElement, Integer> zOrder = new IdentityHashMap<>();
+    private boolean zOrderStale = true;
+
+    public void rebuild(List<PaintElement> elements) {
+        clear();
+        for (PaintElement element : elements) {
+            insert(element);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        oversized.clear();
+        indexedBounds.clear();
+        invalidateZOrder();
+    }
+
+    public void add(PaintElement element) {
+        insert(element);
+        invalidateZOrder();
+    }
+
+    public void remove(PaintElement element) {
+        if (element == null) {
+            return;
+        }
+        Rectangle bounds = indexedBounds.remove(element);
+        if (bounds != null) {
+            removeFromCells(element, bounds);
+        }
+        invalidateZOrder();
+    }
+
+    /**
+     * Re-indexes an element after it moved or was resized. Z-order is unaffected.
+     */
+    public void update(PaintElement element) {
+        if (element == null) {
+            return;
+        }
+        Rectangle bounds = indexedBounds.remove(element);
+        if (bounds != null) {
+            removeFromCells(element, bounds);
+        }
+        insert(element);
+    }
+
+    /**
+     * Marks the cached z-order ranks stale; call after the paint element list is reordered.
+     */
+    public void invalidateZOrder() {
+        zOrderStale = true;
+    }
+
+    public int size() {
+        return indexedBounds.size();
+    }
+
+    /**
+     * Finds the topmost element in {@code elements} that contains the point.
+     *
+     * @param point the point to test
+     * @param elements the paint element list, topmost first
+     * @return the topmost hit, or null if nothing is under the point
+     */
+    public PaintElement findTopmostAt(Point point, List<PaintElement> elements) {
+        if (point == null) {
+            return null;
+        }
+        if (indexedBounds.size() != elements.size()) {
+            // Something changed the list without telling us; resync rather than miss hits.
+            rebuild(elements);
+        }
+        if (zOrderStale || zOrder.size() != elements.size()) {
+            rebuildZOrder(elements);
+        }
+
+        PaintElement best = null;
+        int bestRank = Integer.MAX_VALUE;
+        List<PaintElement> cell = cells.get(cellKey(Math.floorDiv(point.x, CELL_SIZE), Math.floorDiv(point.y, CELL_SIZE)));
+        if (cell != null) {
+            for (PaintElement candidate : cell) {
+                int rank = rankOf(candidate);
+                if (rank < bestRank && indexedBounds.get(candidate).contains(point) && candidate.contains(point)) {
+                    best = candidate;
+                    bestRank = rank;
+                }
+            }
+        }
+        for (PaintElement candidate : oversized) {
+            int rank = rankOf(candidate);
+            if (rank < bestRank && indexedBounds.get(candidate).contains(point) && candidate.contains(point)) {
+                best = candidate;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    private int rankOf(PaintElement element) {
+        Integer rank = zOrder.get(element);
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+
+    private void rebuildZOrder(List<PaintElement> elements) {
+        zOrder.clear();
+        for (int i = 0; i < elements.size(); i++) {
+            PaintElement element = elements.get(i);
+            if (element != null) {
+                zOrder.put(element, i);
+            }
+        }
+        zOrderStale = false;
+    }
+
+    private void insert(PaintElement element) {
+        if (element == null) {
+            return;
+        }
+        Rectangle bounds = hitBounds(element);
+        indexedBounds.put(element, bounds);
+
+        int minCellX = Math.floorDiv(bounds.x, CELL_SIZE);
+        int minCellY = Math.floorDiv(bounds.y, CELL_SIZE);
+        int maxCellX = Math.floorDiv(bounds.x + bounds.width, CELL_SIZE);
+        int maxCellY = Math.floorDiv(bounds.y + bounds.height, CELL_SIZE);
+        long cellCount = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (cellCount > MAX_CELLS_PER_ELEMENT) {
+            oversized.add(element);
+            return;
+        }
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                cells.computeIfAbsent(cellKey(cx, cy), k -> new ArrayList<>()).add(element);
+            }
+        }
+    }
+
+    private void removeFromCells(PaintElement element, Rectangle bounds) {
+        int minCellX = Math.floorDiv(bounds.x, CELL_SIZE);
+        int minCellY = Math.floorDiv(bounds.y, CELL_SIZE);
+        int maxCellX = Math.floorDiv(bounds.x + bounds.width, CELL_SIZE);
+        int maxCellY = Math.floorDiv(bounds.y + bounds.height, CELL_SIZE);
+        long cellCount = (long) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1);
+        if (cellCount > MAX_CELLS_PER_ELEMENT) {
+            removeByIdentity(oversized, element);
+            return;
+        }
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                long key = cellKey(cx, cy);
+                List<PaintElement> cell = cells.get(key);
+                if (cell != null) {
+                    removeByIdentity(cell, element);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void removeByIdentity(List<PaintElement> list, PaintElement element) {
+        for (int i = list.size() - 1; i >= 0; i--) {
+            if (list.get(i) == element) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+
+    private static Rectangle hitBounds(PaintElement element) {
+        Rectangle bounds = element.getBounds();
+        if (bounds == null) {
+            bounds = new Rectangle(element.getPosition());
+        } else {
+            bounds = new Rectangle(bounds);
+        }
+        int pad = (int) Math.ceil(element.getStrokeWidth() / 2.0) + HIT_TOLERANCE;
+        bounds.grow(pad, pad);
+        return bounds;
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xffffffffL);
+    }
+}
@@ -1,29 +1,230 @@
 package app;
 
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
+import paintcomponents.ImageAsset;
+import paintcomponents.ImagePool;
+
+/**
+ * Loads images for new image elements. The file's bytes are kept as they are
+ * so saving does not have to re-encode them, and importing the same picture
+ * twice yields the same pooled asset.
+ *
+ * Given a maximum size, images at least twice as large are instead decoded
+ * at a fraction of their resolution with {@link ImageReader} source
+ * subsampling, so huge photos never exist on the heap at full size; only the
+ * reduced image is kept. Loading does I/O and decoding, so call these off the
+ * Event Dispatch Thread.
+ */
 public class ImageImportService {
+    // Subsample only when it at least halves each side; smaller reductions are not worth the quality loss.
+    private static final int MIN_SUBSAMPLING = 2;
+    private static final int MAX_DECODE_THREADS = 8;
+
+    public ImageAsset loadFromUrlString(String url) throws Exception {
+        return loadFromUrlString(url, null);
+    }
 
-    public BufferedImage loadFromUrlString(String url) throws Exception {
+    /**
+     * @param maxSize size to reduce much larger images to, or null to always load at full resolution
+     */
+    public ImageAsset loadFromUrlString(String url, Dimension maxSize) throws Exception {
         URL imageUrl = new File(new URI(url)).toURI().toURL();
-        BufferedImage image = ImageIO.read(imageUrl);
-        if (image == null) {
-            throw new IOException("Could not load image from URL.");
+        byte[] encoded;
+        try (InputStream in = imageUrl.openStream()) {
+            encoded = in.readAllBytes();
+        }
+        return decode(encoded, maxSize, "Could not load image from URL.");
+    }
+
+    public ImageAsset loadFromFile(File file) throws IOException {
+        return loadFromFile(file, null);
+    }
+
+    /**
+     * @param maxSize size to reduce much larger images to, or null to always load at full resolution
+     */
+    public ImageAsset loadFromFile(File file, Dimension maxSize) throws IOException {
+        return decode(Files.readAllBytes(file.toPath()), maxSize, "Could not load image file.");
+    }
+
+    /**
+     * Loads several files in parallel on a pool of up to one thread per core.
+     * Files that fail are reported in the result instead of stopping the rest.
+     *
+     * @param listener told after each file; returning false cancels the remaining files
+     * @throws CancellationException if the listener cancelled
+     */
+    public BatchResult loadFiles(List<File> files, Dimension maxSize, ProjectIOService.ProgressListener listener)
+            throws InterruptedException {
+        int threads = Math.max(1, Math.min(files.size(),
+                Math.min(MAX_DECODE_THREADS, Runtime.getRuntime().availableProcessors())));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "image-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+            ImageAsset[] assets = new ImageAsset[files.size()];
+            String[] errors = new String[files.size()];
+            for (int i = 0; i < files.size(); i++) {
+                int index = i;
+                completion.submit(() -> {
+                    try {
+                        assets[index] = loadFromFile(files.get(index), maxSize);
+                    } catch (IOException | RuntimeException e) {
+                        errors[index] = files.get(index).getName() + ": " + e.getMessage();
+                    }
+                    return index;
+                });
+            }
+            for (int done = 1; done <= files.size(); done++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Image import task failed", e.getCause());
+                }
+                if (!listener.progress(done, files.size())) {
+                    throw new CancellationException("Import cancelled");
+                }
+            }
+            // Gathered in selection order, whatever order the decodes finished in.
+            BatchResult result = new BatchResult();
+            for (int i = 0; i < files.size(); i++) {
+                if (assets[i] != null) {
+                    result.files.add(files.get(i));
+                    result.assets.add(assets[i]);
+                } else {
+                    result.failures.add(errors[i]);
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Replaces each folder in a file chooser selection by the image files
+     * directly inside it, sorted by name; other files are kept as chosen.
+     */
+    public static List<File> expandSelection(File[] selection) {
+        Set<String> suffixes = new HashSet<>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            suffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        List<File> files = new ArrayList<>();
+        for (File chosen : selection) {
+            if (!chosen.isDirectory()) {
+                files.add(chosen);
+                continue;
+            }
+            File[] children = chosen.listFiles(child -> child.isFile() && suffixes.contains(suffixOf(child)));
+            if (children != null) {
+                Arrays.sort(children, Comparator.comparing(File::getName, String.CASE_INSENSITIVE_ORDER));
+                Collections.addAll(files, children);
+            }
         }
-        return image;
+        return files;
     }
 
-    public BufferedImage loadFromFile(File file) throws IOException {
-        BufferedImage image = ImageIO.read(file);
-        if (image == null) {
-            throw new IOException("Could not load image file.");
+    private static String suffixOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Outcome of {@link #loadFiles}: the files that loaded with their assets, in
+     * selection order, and a message for each file that did not.
+     */
+    public static final class BatchResult {
+        private final List<File> files = new ArrayList<>();
+        private final List<ImageAsset> assets = new ArrayList<>();
+        private final List<String> failures = new ArrayList<>();
+
+        public List<File> getFiles() {
+            return files;
+        }
+
+        public List<ImageAsset> getAssets() {
+            return assets;
+        }
+
+        public List<String> getFailures() {
+            return failures;
+        }
+    }
+
+    private static ImageAsset decode(byte[] encoded, Dimension maxSize, String errorMessage) throws IOException {
+        try {
+            ImageAsset reduced = maxSize != null ? decodeSubsampled(encoded, maxSize) : null;
+            return reduced != null ? reduced : ImagePool.fromEncoded(encoded);
+        } catch (IOException e) {
+            throw new IOException(errorMessage, e);
+        }
+    }
+
+    /**
+     * @return the image read at reduced resolution, or null if it is not large enough to need it
+     */
+    private static ImageAsset decodeSubsampled(byte[] encoded, Dimension maxSize) throws IOException {
+        if (maxSize.width <= 0 || maxSize.height <= 0) {
+            return null;
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported or corrupt image data.");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                // Rounded down, so the image never ends up smaller than maxSize on its longer side.
+                int factor = Math.max(width / maxSize.width, height / maxSize.height);
+                if (factor < MIN_SUBSAMPLING) {
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                boolean jpeg = "jpeg".equalsIgnoreCase(reader.getFormatName());
+                // Photos stay JPEG; re-encoding them as PNG would make the saved drawing larger than the original.
+                return ImagePool.fromImage(image, jpeg ? "jpg" : "png");
+            } finally {
+                reader.dispose();
+            }
         }
-        return image;
     }
 }
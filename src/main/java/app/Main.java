@@ -4,11 +4,17 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 
 import actions.AddElementAction;
+import actions.AddElementsAction;
 import actions.ChangeDisplayNameAction;
 import actions.ClearAllAction;
+import actions.CompositeAction;
 import actions.DeleteElementAction;
+import actions.DeleteElementsAction;
 import actions.ReorderLayerAction;
+import actions.UndoHistory;
 import actions.UndoableAction;
+import paintcomponents.ImageAsset;
+import paintcomponents.ImageDecoder;
 import paintcomponents.ImageElement;
 import ui.GridManager;
 
@@ -18,13 +24,15 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.net.URL;
 import org.slf4j.Logger;
@@ -36,6 +44,7 @@ public class Main extends JFrame {
     private JLabel statusLabel;
     private JLabel lastActionLabel; // New label for last action status
     private JLabel debugLogLabel;
+    private JLabel historyLabel;
     private boolean debugLogVisible = false;
     private DrawingPanel drawingPanel;
     private BufferedImage rsInterfaceImage;
@@ -49,15 +58,21 @@ public class Main extends JFrame {
     private final ShapeCreationService shapeCreationService;
 
     private List<PaintElement> paintElements = new ArrayList<>();
+    private final ElementSpatialIndex spatialIndex = new ElementSpatialIndex();
 
     // New state fields
     private boolean rsInterfaceVisible = true;
     private boolean snapToGridActive = false;
+    private boolean downscaleLargeImages = true;
     private boolean antiAliasingActive = true; // Default to on
 
     // Undo/Redo stacks
-    private final Deque<UndoableAction> undoStack = new ArrayDeque<>();
-    private final Deque<UndoableAction> redoStack = new ArrayDeque<>();
+    private final UndoHistory history = new UndoHistory();
+    // Actions recorded by the step runAsOneStep has open, or null
+    private List<UndoableAction> openStep;
+    // Nesting of beginBatchUpdate; while above zero, layer list refreshes wait for the end
+    private int batchDepth;
+    private boolean layersDirty;
 
     private GridManager gridManager;
 
@@ -73,6 +88,17 @@ public class Main extends JFrame {
         shapeCreationService = new ShapeCreationService();
         gridManager = new GridManager(this::repaintDrawingPanel);
         drawingController = new DrawingController(this);
+        // Images from opened drawings are decoded in the background; show each one as it becomes ready.
+        ImageDecoder.setOnDecoded(() -> SwingUtilities.invokeLater(() -> {
+            canvasRenderer.invalidateLayers();
+            repaintDrawingPanel();
+        }));
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                closeJournal();
+            }
+        });
 
         loadRSInterfaceImage();
         drawingPanel = new DrawingPanel(this, drawingController, canvasRenderer, shapeCreationService);
@@ -92,11 +118,19 @@ public class Main extends JFrame {
         debugLogLabel.setBorder(BorderFactory.createEmptyBorder(0, 24, 0, 12));
         debugLogLabel.setVisible(false);
 
+        // Undo history size, next to the debug log on the right
+        historyLabel = new JLabel();
+        historyLabel.setBorder(BorderFactory.createEmptyBorder(0, 24, 0, 12));
+        JPanel eastPanel = new JPanel(new BorderLayout());
+        eastPanel.add(debugLogLabel, BorderLayout.CENTER);
+        eastPanel.add(historyLabel, BorderLayout.EAST);
+
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.add(statusLabel, BorderLayout.WEST);
         statusPanel.add(lastActionLabel, BorderLayout.CENTER);
-        statusPanel.add(debugLogLabel, BorderLayout.EAST);
+        statusPanel.add(eastPanel, BorderLayout.EAST);
         add(statusPanel, BorderLayout.SOUTH);
+        updateUndoRedoMenuItems();
 
         // Set custom app icon
         try {
@@ -135,9 +169,90 @@ public class Main extends JFrame {
 
     // --- BEGIN: File and Image Handling Implementation ---
     private File currentSaveFile = null;
-
+    // Save or load running on a worker thread; only one at a time.
+    private ProjectFileTask<?> activeFileTask;
+    // Autosave of every committed change, for recovery after a crash; null if unavailable.
+    private ProjectJournal journal;
+    // Where the drawing's file stands relative to the drawing, so saves write only what changed.
+    private SaveState saveState = new SaveState();
+
+    /**
+     * Sets the file the drawing is saved to and restarts autosave there; the
+     * previous journal is discarded since its drawing was abandoned, as when
+     * another is opened or started.
+     */
     public void setCurrentSaveFile(File file) {
         this.currentSaveFile = file;
+        closeJournal();
+        journal = ProjectJournal.open(file, paintElements);
+    }
+
+    /**
+     * Makes a file the drawing was just saved to its file, as after Save As.
+     * Autosave moves next to it; the new journal is started before the old
+     * one is discarded, so there is recovery for the drawing throughout.
+     */
+    private void adoptSavedFile(File file) {
+        ProjectJournal previous = journal;
+        journal = ProjectJournal.open(file, paintElements);
+        if (previous != null) {
+            previous.close(true);
+        }
+        currentSaveFile = file;
+        updateFrameTitle();
+    }
+
+    /**
+     * Stops autosave and deletes its files, as when the application exits normally.
+     */
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close(true);
+            journal = null;
+        }
+    }
+
+    /**
+     * Tells autosave that elements were changed in place outside of an undoable
+     * action, such as by dragging or resizing them on the canvas.
+     */
+    public void elementsEdited(Collection<PaintElement> elements) {
+        recordChange(elements);
+    }
+
+    /**
+     * Called after every committed change with the elements it changed in
+     * place, for autosave and the next save to pick up.
+     */
+    private void recordChange(Collection<PaintElement> changed) {
+        saveState.markEdited(changed);
+        if (journal == null) {
+            return;
+        }
+        journal.record(paintElements, changed);
+        if (journal.wantsCheckpoint()) {
+            journal.checkpoint(paintElements);
+        }
+    }
+
+    /**
+     * Offers to restore an untitled drawing left by a session that did not
+     * exit normally, then starts autosave. Call once the windows are showing.
+     */
+    private void startJournal() {
+        if (ProjectJournal.hasRecovery(null) && confirmRecovery("an untitled drawing")) {
+            openDrawing(null, true);
+        } else {
+            ProjectJournal.discardRecovery(null);
+            setCurrentSaveFile(null);
+        }
+    }
+
+    private boolean confirmRecovery(String name) {
+        int answer = JOptionPane.showConfirmDialog(this,
+                "Unsaved changes to " + name + " were left by a session that did not close normally.\nRestore them?",
+                "Recover Drawing", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        return answer == JOptionPane.YES_OPTION;
     }
 
     public void handleSave() {
@@ -145,16 +260,75 @@ public class Main extends JFrame {
             handleSaveAs();
             return;
         }
-        try {
-            projectIOService.save(currentSaveFile, paintElements);
-            setStatus("Saved to " + currentSaveFile.getName());
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Failed to save: " + ex.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
-            setStatus("Save failed");
+        if (isFileTaskRunning()) {
+            return;
         }
+        saveTo(currentSaveFile);
+    }
+
+    /**
+     * Saves the drawing on a worker thread. The drawing only becomes the
+     * target's once the save has succeeded, so a save that is refused, fails
+     * or is cancelled leaves it pointed at the file it had.
+     */
+    private void saveTo(File target) {
+        SaveState state = saveState;
+        // Planned on the EDT, copying the elements to be written; editing can go on while they are written out.
+        ProjectIOService.SavePlan plan = projectIOService.planSave(target, paintElements, state, canvasSize());
+        setStatus("Saving " + target.getName() + "...");
+        startFileTask(new ProjectFileTask<Void>(this, "Saving " + target.getName()) {
+            @Override
+            protected Void doInBackground() throws Exception {
+                projectIOService.save(plan, this);
+                return null;
+            }
+
+            @Override
+            protected void succeeded(Void result) {
+                state.saved(plan);
+                if (!target.equals(currentSaveFile)) {
+                    adoptSavedFile(target);
+                }
+                if (plan.wasAppended()) {
+                    setStatus("Saved " + plan.getWrittenElementCount() + " changed element(s) to " + target.getName());
+                } else {
+                    setStatus("Saved to " + target.getName());
+                }
+            }
+
+            @Override
+            protected void failed(Throwable error) {
+                state.saveFailed(plan);
+                logger.error("Failed to save " + target + ": " + error.getMessage());
+                JOptionPane.showMessageDialog(Main.this, "Failed to save: " + error.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+                setStatus("Save failed");
+            }
+
+            @Override
+            protected void cancelled() {
+                state.saveFailed(plan);
+                setStatus("Save cancelled");
+            }
+        });
+    }
+
+    private boolean isFileTaskRunning() {
+        if (activeFileTask != null && !activeFileTask.isFinished()) {
+            setStatus("Wait for the current save, load or import to finish");
+            return true;
+        }
+        return false;
+    }
+
+    private void startFileTask(ProjectFileTask<?> task) {
+        activeFileTask = task;
+        task.execute();
     }
 
     public void handleSaveAs() {
+        if (isFileTaskRunning()) {
+            return;
+        }
         JFileChooser chooser = new JFileChooser();
         javax.swing.filechooser.FileNameExtensionFilter filter = new javax.swing.filechooser.FileNameExtensionFilter("Paint Files (*.pfd)", "pfd");
         chooser.setFileFilter(filter);
@@ -163,34 +337,93 @@ public class Main extends JFrame {
             if (!file.getName().toLowerCase().endsWith(".pfd")) {
                 file = new File(file.getParentFile(), file.getName() + ".pfd");
             }
-            setCurrentSaveFile(file);
-            handleSave();
+            saveTo(file);
         } else {
             setStatus("Save As cancelled");
         }
     }
 
+    /**
+     * @return the size of the canvas as shown, for the thumbnail saved with the drawing
+     */
+    private Dimension canvasSize() {
+        Dimension size = drawingPanel.getSize();
+        return size.width > 0 && size.height > 0 ? size : drawingPanel.getPreferredSize();
+    }
+
     public void handleOpen() {
         JFileChooser chooser = new JFileChooser();
         javax.swing.filechooser.FileNameExtensionFilter filter = new javax.swing.filechooser.FileNameExtensionFilter("Paint Files (*.pfd)", "pfd");
         chooser.setFileFilter(filter);
+        chooser.setAccessory(new DrawingPreviewPanel(chooser, projectIOService));
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             File file = chooser.getSelectedFile();
-            try {
-                List<PaintElement> loadedElements = projectIOService.load(file);
+            if (isFileTaskRunning()) {
+                return;
+            }
+            boolean recover = ProjectJournal.hasRecovery(file) && confirmRecovery(file.getName());
+            if (!recover) {
+                ProjectJournal.discardRecovery(file);
+            }
+            openDrawing(file, recover);
+        } else {
+            setStatus("Open cancelled");
+        }
+    }
+
+    /**
+     * Replaces the drawing with a file's contents, or with the drawing rebuilt
+     * from its autosave journal when recovering.
+     *
+     * @param file the drawing's file, or null to recover an untitled drawing
+     */
+    private void openDrawing(File file, boolean recover) {
+        String name = file != null ? file.getName() : "untitled drawing";
+        setStatus((recover ? "Recovering " : "Opening ") + name + "...");
+        SaveState loadedState = new SaveState();
+        startFileTask(new ProjectFileTask<List<PaintElement>>(this, (recover ? "Recovering " : "Opening ") + name) {
+            @Override
+            protected List<PaintElement> doInBackground() throws Exception {
+                return recover ? ProjectJournal.recover(file) : projectIOService.load(file, loadedState, this);
+            }
+
+            @Override
+            protected void succeeded(List<PaintElement> loadedElements) {
+                // Swap the whole document in one step on the EDT.
+                saveState = loadedState;
+                // Steps recorded on the previous drawing would only hold its elements alive.
+                history.clear();
+                updateUndoRedoMenuItems();
                 paintElements.clear();
                 paintElements.addAll(loadedElements);
+                spatialIndex.rebuild(paintElements);
+                drawingController.pruneSelection(paintElements);
                 setCurrentSaveFile(file);
+                updateFrameTitle();
                 updateToolboxLayerList();
                 drawingPanel.repaint();
-                setStatus("Opened " + file.getName());
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Failed to open: " + ex.getMessage(), "Open Error", JOptionPane.ERROR_MESSAGE);
-                setStatus("Open failed");
+                setStatus((recover ? "Recovered " : "Opened ") + name);
             }
-        } else {
-            setStatus("Open cancelled");
-        }
+
+            @Override
+            protected void failed(Throwable error) {
+                logger.error("Failed to " + (recover ? "recover " : "open ") + name + ": " + error.getMessage());
+                JOptionPane.showMessageDialog(Main.this, "Failed to " + (recover ? "recover: " : "open: ") + error.getMessage(),
+                        recover ? "Recovery Error" : "Open Error", JOptionPane.ERROR_MESSAGE);
+                setStatus(recover ? "Recovery failed" : "Open failed");
+                if (recover && file == null) {
+                    setCurrentSaveFile(null);
+                }
+            }
+
+            @Override
+            protected void cancelled() {
+                setStatus(recover ? "Recovery cancelled" : "Open cancelled");
+                if (recover && file == null) {
+                    setCurrentSaveFile(null);
+                }
+            }
+        });
     }
 
     public void handleImageUrlInput() {
@@ -199,37 +432,122 @@ public class Main extends JFrame {
             setStatus("Image URL input cancelled");
             return;
         }
-        try {
-            BufferedImage img = imageImportService.loadFromUrlString(url);
-            ImageElement element = new ImageElement(img, new Point(50, 50), url, "Image");
-            paintElements.add(0, element);
-            updateToolboxLayerList();
-            drawingPanel.repaint();
-            setStatus("Image added from URL");
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Failed to load image: " + ex.getMessage(), "Image Error", JOptionPane.ERROR_MESSAGE);
-            setStatus("Image URL failed");
-        }
+        Dimension maxSize = importMaxSize();
+        startImageImport("image from URL", url,
+                () -> imageImportService.loadFromUrlString(url, maxSize), "Image added from URL", "Image URL failed");
     }
 
     public void handleLocalImageInput() {
         JFileChooser chooser = new JFileChooser();
-        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = chooser.getSelectedFile();
-            try {
-                BufferedImage img = imageImportService.loadFromFile(file);
-                ImageElement element = new ImageElement(img, new Point(50, 50), file.getAbsolutePath(), "Image");
+        chooser.setMultiSelectionEnabled(true);
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setDialogTitle("Add Images (files or folders)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            setStatus("Image file input cancelled");
+            return;
+        }
+        List<File> files = ImageImportService.expandSelection(chooser.getSelectedFiles());
+        if (files.isEmpty()) {
+            setStatus("No images found in the selection");
+            return;
+        }
+        if (isFileTaskRunning()) {
+            return;
+        }
+        Dimension maxSize = importMaxSize();
+        setStatus("Loading " + files.size() + " image(s)...");
+        startFileTask(new ProjectFileTask<ImageImportService.BatchResult>(this, "Loading " + files.size() + " image(s)") {
+            @Override
+            protected ImageImportService.BatchResult doInBackground() throws Exception {
+                return imageImportService.loadFiles(files, maxSize, this);
+            }
+
+            @Override
+            protected void succeeded(ImageImportService.BatchResult result) {
+                addImportedImages(result);
+            }
+
+            @Override
+            protected void failed(Throwable error) {
+                JOptionPane.showMessageDialog(Main.this, "Failed to load images: " + error.getMessage(), "Image Error", JOptionPane.ERROR_MESSAGE);
+                setStatus("Image file failed");
+            }
+
+            @Override
+            protected void cancelled() {
+                setStatus("Image import cancelled");
+            }
+        });
+    }
+
+    /**
+     * Adds a batch of loaded images as one undoable step, cascading them from
+     * the top-left so they do not all land on the same spot.
+     */
+    private void addImportedImages(ImageImportService.BatchResult result) {
+        List<PaintElement> elements = new ArrayList<>();
+        List<File> files = result.getFiles();
+        for (int i = 0; i < files.size(); i++) {
+            int offset = (i % 10) * 20;
+            // The first file in the selection ends up topmost.
+            elements.add(new ImageElement(result.getAssets().get(i), new Point(50 + offset, 50 + offset),
+                    files.get(i).getAbsolutePath(), files.get(i).getName()));
+        }
+        if (!elements.isEmpty()) {
+            internalAddElementsToList(elements);
+            addUndoableAction(new AddElementsAction(this, elements));
+        }
+        List<String> failures = result.getFailures();
+        if (!failures.isEmpty()) {
+            String shown = String.join("\n", failures.subList(0, Math.min(10, failures.size())));
+            if (failures.size() > 10) {
+                shown += "\n... and " + (failures.size() - 10) + " more";
+            }
+            JOptionPane.showMessageDialog(this, "Some images could not be loaded:\n" + shown, "Image Error", JOptionPane.WARNING_MESSAGE);
+        }
+        setStatus(elements.size() + " image(s) added" + (failures.isEmpty() ? "" : ", " + failures.size() + " failed"));
+    }
+
+    /**
+     * Images much larger than the visible canvas are reduced while decoding, unless turned off in the View menu.
+     */
+    private Dimension importMaxSize() {
+        return downscaleLargeImages && drawingPanel != null ? drawingPanel.getSize() : null;
+    }
+
+    private void startImageImport(String source, String imagePath, Callable<ImageAsset> loader,
+                                  String successStatus, String failureStatus) {
+        if (isFileTaskRunning()) {
+            return;
+        }
+        setStatus("Loading " + source + "...");
+        startFileTask(new ProjectFileTask<ImageAsset>(this, "Loading " + source) {
+            @Override
+            protected ImageAsset doInBackground() throws Exception {
+                return loader.call();
+            }
+
+            @Override
+            protected void succeeded(ImageAsset asset) {
+                ImageElement element = new ImageElement(asset, new Point(50, 50), imagePath, "Image");
                 paintElements.add(0, element);
+                spatialIndex.add(element);
                 updateToolboxLayerList();
                 drawingPanel.repaint();
-                setStatus("Image added from file");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Failed to load image: " + ex.getMessage(), "Image Error", JOptionPane.ERROR_MESSAGE);
-                setStatus("Image file failed");
+                setStatus(successStatus);
             }
-        } else {
-            setStatus("Image file input cancelled");
-        }
+
+            @Override
+            protected void failed(Throwable error) {
+                JOptionPane.showMessageDialog(Main.this, "Failed to load image: " + error.getMessage(), "Image Error", JOptionPane.ERROR_MESSAGE);
+                setStatus(failureStatus);
+            }
+
+            @Override
+            protected void cancelled() {
+                setStatus("Image import cancelled");
+            }
+        });
     }
     // --- END: File and Image Handling Implementation ---
 
@@ -246,6 +564,33 @@ public class Main extends JFrame {
         }
     }
 
+    public void repaintDrawingPanel(Rectangle dirtyRegion) {
+        if (drawingPanel == null) {
+            return;
+        }
+        if (dirtyRegion == null) {
+            drawingPanel.repaint();
+        } else {
+            drawingPanel.repaint(dirtyRegion);
+        }
+    }
+
+    public void beginInteractiveCompositing(Collection<PaintElement> movingElements) {
+        canvasRenderer.beginCompositing(movingElements);
+    }
+
+    public void endInteractiveCompositing() {
+        canvasRenderer.endCompositing();
+    }
+
+    public void setPendingTranslation(PaintElement element, int dx, int dy) {
+        canvasRenderer.setPendingTranslation(element, dx, dy);
+    }
+
+    public Rectangle getElementRepaintBounds(PaintElement element) {
+        return canvasRenderer.getRepaintBounds(element, toolboxFrame);
+    }
+
     private void loadRSInterfaceImage() {
         try {
             // Load from classpath (works in JAR and IDE)
@@ -287,20 +632,105 @@ public class Main extends JFrame {
     }
 
     public void addUndoableAction(UndoableAction action) {
-        undoStack.push(action);
-        redoStack.clear(); // Clear redo stack whenever a new action is performed
+        if (openStep != null) {
+            openStep.add(action);
+            return;
+        }
+        history.push(action); // Clears the redo stack, and may merge into the previous step
+        recordChange(action.getAffectedElements());
         updateUndoRedoMenuItems();
         setLastActionStatus(action.getActionName());
     }
 
+    /**
+     * Does several changes as one undo step. Actions recorded with
+     * {@link #addUndoableAction} while {@code changes} runs are collected
+     * and recorded together when it returns, and the layer list and canvas
+     * are refreshed once at the end. If {@code changes} throws, the actions
+     * it recorded are undone again. Steps opened inside another one join it.
+     *
+     * @return true if anything was recorded
+     */
+    public boolean runAsOneStep(String actionName, Runnable changes) {
+        if (openStep != null) {
+            int before = openStep.size();
+            changes.run();
+            return openStep.size() > before;
+        }
+        List<UndoableAction> recorded = new ArrayList<>();
+        openStep = recorded;
+        beginBatchUpdate();
+        boolean completed = false;
+        try {
+            changes.run();
+            completed = true;
+        } finally {
+            openStep = null;
+            if (!completed) {
+                for (int i = recorded.size() - 1; i >= 0; i--) {
+                    recorded.get(i).undo();
+                }
+            }
+            endBatchUpdate();
+        }
+        if (recorded.isEmpty()) {
+            return false;
+        }
+        addUndoableAction(recorded.size() == 1 ? recorded.get(0) : new CompositeAction(actionName, recorded));
+        return true;
+    }
+
+    /**
+     * Holds back layer list and canvas refreshes from the internal list
+     * methods until the matching {@link #endBatchUpdate}, which does one.
+     */
+    public void beginBatchUpdate() {
+        batchDepth++;
+    }
+
+    public void endBatchUpdate() {
+        if (--batchDepth == 0 && layersDirty) {
+            layersDirty = false;
+            updateToolboxLayerList();
+            repaintDrawingPanel();
+        }
+    }
+
+    /**
+     * Refreshes the layer list and canvas after the element list changed,
+     * or notes that it is due if a batch update is open.
+     */
+    private void layersChanged() {
+        if (batchDepth > 0) {
+            layersDirty = true;
+        } else {
+            updateToolboxLayerList();
+            drawingPanel.repaint();
+        }
+    }
+
+    /**
+     * Undoes or redoes one step, refreshing the layer list once afterwards
+     * however many elements it touched.
+     */
+    private UndoableAction replay(Supplier<UndoableAction> step) {
+        beginBatchUpdate();
+        try {
+            UndoableAction action = step.get();
+            if (action != null) {
+                layersDirty = true;
+            }
+            return action;
+        } finally {
+            endBatchUpdate();
+        }
+    }
+
     public void undo() {
-        if (!undoStack.isEmpty()) {
-            UndoableAction action = undoStack.pop();
-            action.undo();
-            redoStack.push(action);
+        UndoableAction action = replay(history::undo);
+        if (action != null) {
+            recordChange(action.getAffectedElements());
             updateUndoRedoMenuItems();
-            updateToolboxLayerList(); // Refresh layer list as undo might change it
-            drawingPanel.repaint();
             setLastActionStatus("Undo: " + action.getActionName());
             logger.info("Performed UNDO");
         } else {
@@ -310,13 +740,10 @@ public class Main extends JFrame {
     }
 
     public void redo() {
-        if (!redoStack.isEmpty()) {
-            UndoableAction action = redoStack.pop();
-            action.redo();
-            undoStack.push(action);
+        UndoableAction action = replay(history::redo);
+        if (action != null) {
+            recordChange(action.getAffectedElements());
             updateUndoRedoMenuItems();
-            updateToolboxLayerList(); // Refresh layer list as redo might change it
-            drawingPanel.repaint();
             setLastActionStatus("Redo: " + action.getActionName());
             logger.info("Performed REDO");
         } else {
@@ -327,8 +754,12 @@ public class Main extends JFrame {
 
     private void updateUndoRedoMenuItems() {
         if (toolboxFrame != null) {
-            toolboxFrame.setUndoEnabled(!undoStack.isEmpty());
-            toolboxFrame.setRedoEnabled(!redoStack.isEmpty());
+            toolboxFrame.setUndoEnabled(history.canUndo());
+            toolboxFrame.setRedoEnabled(history.canRedo());
+        }
+        if (historyLabel != null) {
+            historyLabel.setText(String.format("History: %d step(s), %.1f MB", history.getUndoDepth() + history.getRedoDepth(),
+                    history.getRetainedBytes() / (1024.0 * 1024.0)));
         }
     }
 
@@ -376,6 +807,10 @@ public class Main extends JFrame {
         return gridManager;
     }
 
+    public ElementSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
     public ToolboxFrame getToolboxFrame() {
         return toolboxFrame;
     }
@@ -394,6 +829,7 @@ public class Main extends JFrame {
 
     private void reorderPaintElements(int fromIndex, int toIndex) {
         elementService.moveElement(paintElements, fromIndex, toIndex);
+        spatialIndex.invalidateZOrder();
     }
 
     public void internalAddElementToList(PaintElement element, int index) {
@@ -404,26 +840,79 @@ public class Main extends JFrame {
         } else {
             paintElements.add(index, element);
         }
-        updateToolboxLayerList();
+        spatialIndex.add(element);
+        layersChanged();
         if (index == 0) {
             if (toolboxFrame != null) toolboxFrame.selectLayerInList(0);
         }
-        drawingPanel.repaint();
     }
 
     public void internalRemoveElementFromList(PaintElement element) {
         logger.debug("internalRemoveElementFromList called with element={}", element);
         paintElements.remove(element);
-        updateToolboxLayerList();
-        drawingPanel.repaint();
+        spatialIndex.remove(element);
+        layersChanged();
+    }
+
+    /**
+     * Puts the elements on top of the drawing, topmost first, refreshing the layer list once.
+     */
+    public void internalAddElementsToList(List<PaintElement> elements) {
+        logger.debug("internalAddElementsToList called with {} elements", elements.size());
+        paintElements.addAll(0, elements);
+        for (PaintElement element : elements) {
+            spatialIndex.add(element);
+        }
+        layersChanged();
+        if (toolboxFrame != null && !elements.isEmpty()) {
+            toolboxFrame.selectLayerInList(0);
+        }
+    }
+
+    /**
+     * Puts elements back at the given positions, merging them into the list
+     * in one pass.
+     *
+     * @param elements in drawing order
+     * @param indices the position of each element in the resulting list, ascending
+     */
+    public void internalInsertElementsInList(List<PaintElement> elements, int[] indices) {
+        logger.debug("internalInsertElementsInList called with {} elements", elements.size());
+        int total = paintElements.size() + elements.size();
+        List<PaintElement> merged = new ArrayList<>(total);
+        int next = 0;
+        int kept = 0;
+        for (int i = 0; i < total; i++) {
+            if (next < elements.size() && (indices[next] <= i || kept == paintElements.size())) {
+                merged.add(elements.get(next++));
+            } else {
+                merged.add(paintElements.get(kept++));
+            }
+        }
+        paintElements.clear();
+        paintElements.addAll(merged);
+        for (PaintElement element : elements) {
+            spatialIndex.add(element);
+        }
+        layersChanged();
+    }
+
+    public void internalRemoveElementsFromList(Collection<PaintElement> elements) {
+        logger.debug("internalRemoveElementsFromList called with {} elements", elements.size());
+        Set<PaintElement> toRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+        toRemove.addAll(elements);
+        paintElements.removeIf(toRemove::contains);
+        for (PaintElement element : toRemove) {
+            spatialIndex.remove(element);
+        }
+        layersChanged();
     }
 
     public void internalRemoveElementFromList(int index) {
         logger.debug("internalRemoveElementFromList called with index={}", index);
         if (isValidPaintElementIndex(index)) {
-            paintElements.remove(index);
-            updateToolboxLayerList();
-            drawingPanel.repaint();
+            spatialIndex.remove(paintElements.remove(index));
+            layersChanged();
         } else {
             logger.error("internalRemoveElementFromList: Invalid index {}", index);
         }
@@ -433,8 +922,8 @@ public class Main extends JFrame {
         logger.debug("internalRestoreElementsList called with {} elements", elementsToRestore != null ? elementsToRestore.size() : 0);
         paintElements.clear();
         paintElements.addAll(elementsToRestore);
-        updateToolboxLayerList();
-        drawingPanel.repaint();
+        spatialIndex.rebuild(paintElements);
+        layersChanged();
         if (toolboxFrame != null && !paintElements.isEmpty()) {
             toolboxFrame.selectLayerInList(0);
         }
@@ -477,31 +966,23 @@ public class Main extends JFrame {
             return;
         }
 
-        int[] sortedDescending = java.util.Arrays.stream(selectedIndicesInListModel)
+        int[] sortedAscending = java.util.Arrays.stream(selectedIndicesInListModel)
+                .filter(this::isValidPaintElementIndex)
                 .distinct()
-                .boxed()
-                .sorted(java.util.Collections.reverseOrder())
-                .mapToInt(Integer::intValue)
+                .sorted()
                 .toArray();
-
-        int removedCount = 0;
-        for (int index : sortedDescending) {
-            if (index < 0 || index >= paintElements.size()) {
-                continue;
-            }
-
-            PaintElement removedElement = paintElements.get(index);
-            UndoableAction action = new DeleteElementAction(this, removedElement, index);
-            paintElements.remove(index);
-            addUndoableAction(action);
-            removedCount++;
+        if (sortedAscending.length == 0) {
+            return;
         }
 
-        if (removedCount > 0) {
-            updateToolboxLayerList();
-            repaintDrawingPanel();
-            setLastActionStatus("Deleted " + removedCount + " layer(s)");
+        List<PaintElement> removedElements = new ArrayList<>(sortedAscending.length);
+        for (int index : sortedAscending) {
+            removedElements.add(paintElements.get(index));
         }
+        UndoableAction action = new DeleteElementsAction(this, removedElements, sortedAscending);
+        internalRemoveElementsFromList(removedElements);
+        addUndoableAction(action);
+        setLastActionStatus("Deleted " + removedElements.size() + " layer(s)");
     }
 
     public void duplicatePaintElement(int selectedIndexInListModel) {
@@ -536,6 +1017,7 @@ public class Main extends JFrame {
         String uniqueDisplayName = generateUniqueDisplayName(duplicatedElement.getName());
         duplicatedElement.setDisplayName(uniqueDisplayName);
         paintElements.add(0, duplicatedElement);
+        spatialIndex.add(duplicatedElement);
         updateToolboxLayerList();
         if (toolboxFrame != null) toolboxFrame.selectLayerInList(0);
         repaintDrawingPanel();
@@ -582,13 +1064,16 @@ public class Main extends JFrame {
             return;
         }
 
-        paintElements.addAll(0, duplicates);
-
-        List<PaintElement> selectedDupes = new ArrayList<>(duplicates);
-        drawingController.setSelection(selectedDupes, selectedDupes.get(0));
-
-        updateToolboxLayerList();
-        repaintDrawingPanel();
+        UndoableAction action = new AddElementsAction(this, duplicates);
+        beginBatchUpdate();
+        try {
+            internalAddElementsToList(duplicates);
+            List<PaintElement> selectedDupes = new ArrayList<>(duplicates);
+            drawingController.setSelection(selectedDupes, selectedDupes.get(0));
+        } finally {
+            endBatchUpdate();
+        }
+        addUndoableAction(action);
         setLastActionStatus("Duplicated " + duplicates.size() + " layer(s)");
     }
 
@@ -616,8 +1101,7 @@ public class Main extends JFrame {
         if (element != null) {
             element.setDisplayName(displayName);
             // Optionally, update the toolbox list if needed
-            updateToolboxLayerList();
-            drawingPanel.repaint();
+            layersChanged();
         }
     }
 
@@ -667,17 +1151,15 @@ public class Main extends JFrame {
                 .collect(Collectors.toSet());
         int[] sortedAscending = selectedSet.stream().sorted().mapToInt(Integer::intValue).toArray();
 
-        boolean moved = false;
-        for (int index : sortedAscending) {
-            if (index > 0 && !selectedSet.contains(index - 1)) {
-                Collections.swap(paintElements, index, index - 1);
-                moved = true;
+        boolean moved = runAsOneStep("Move Layers Up", () -> {
+            for (int index : sortedAscending) {
+                if (index > 0 && index < paintElements.size() && !selectedSet.contains(index - 1)) {
+                    moveLayer(index, index - 1);
+                }
             }
-        }
+        });
 
         if (moved) {
-            updateToolboxLayerList();
-            repaintDrawingPanel();
             setLastActionStatus("Moved selection up");
         }
     }
@@ -695,27 +1177,32 @@ public class Main extends JFrame {
                 .mapToInt(Integer::intValue)
                 .toArray();
 
-        boolean moved = false;
-        for (int index : sortedDescending) {
-            if (index < paintElements.size() - 1 && !selectedSet.contains(index + 1)) {
-                Collections.swap(paintElements, index, index + 1);
-                moved = true;
+        boolean moved = runAsOneStep("Move Layers Down", () -> {
+            for (int index : sortedDescending) {
+                if (index >= 0 && index < paintElements.size() - 1 && !selectedSet.contains(index + 1)) {
+                    moveLayer(index, index + 1);
+                }
             }
-        }
+        });
 
         if (moved) {
-            updateToolboxLayerList();
-            repaintDrawingPanel();
             setLastActionStatus("Moved selection down");
         }
     }
 
+    private void moveLayer(int fromIndex, int toIndex) {
+        UndoableAction action = new ReorderLayerAction(this, paintElements.get(fromIndex), fromIndex, toIndex);
+        action.redo();
+        addUndoableAction(action);
+    }
+
     public void clearPaintElements() {
         if (!paintElements.isEmpty()) {
             List<PaintElement> elementsCleared = new ArrayList<>(paintElements);
             UndoableAction action = new ClearAllAction(this, elementsCleared);
 
             paintElements.clear();
+            spatialIndex.clear();
             addUndoableAction(action);
 
             updateToolboxLayerList();
@@ -730,8 +1217,8 @@ public class Main extends JFrame {
     // Add this method to support ClearAllAction
     public void internalClearAllElements() {
         paintElements.clear();
-        updateToolboxLayerList();
-        drawingPanel.repaint();
+        spatialIndex.clear();
+        layersChanged();
     }
 
     public void setDrawRSInterface(boolean visible) {
@@ -789,6 +1276,15 @@ public class Main extends JFrame {
         logger.info("Snap to Grid set to: " + active);
     }
 
+    public boolean isDownscaleLargeImages() {
+        return this.downscaleLargeImages;
+    }
+
+    public void setDownscaleLargeImages(boolean active) {
+        this.downscaleLargeImages = active;
+        logger.info("Downscale large images set to: " + active);
+    }
+
     public boolean isAntiAliasingActive() {
         return this.antiAliasingActive;
     }
@@ -841,6 +1337,7 @@ public class Main extends JFrame {
             frame.setToolboxFrame(toolbox);
 
             showApplicationWindows(frame, toolbox);
+            frame.startJournal();
         });
     }
 
@@ -920,11 +1417,16 @@ public class Main extends JFrame {
             logger.error("internalMoveElementInList: Invalid arguments");
             return;
         }
-        paintElements.remove(fromIndex);
-        if (toIndex > paintElements.size()) toIndex = paintElements.size();
-        paintElements.add(toIndex, element);
-        updateToolboxLayerList();
-        drawingPanel.repaint();
+        if (Math.abs(fromIndex - toIndex) == 1 && toIndex < paintElements.size()) {
+            // Neighbouring layers, as moved by the layer buttons, just trade places.
+            Collections.swap(paintElements, fromIndex, toIndex);
+        } else {
+            paintElements.remove(fromIndex);
+            if (toIndex > paintElements.size()) toIndex = paintElements.size();
+            paintElements.add(toIndex, element);
+        }
+        spatialIndex.invalidateZOrder();
+        layersChanged();
     }
 
     // For ToolboxFrame
@@ -0,0 +1,89 @@
+package app;
+
+/**
+ * Constants for the chunked binary {@code .pfd} format.
+ *
+ * <pre>
+ * file      := header, chunk*
+ * header    := magic "PFDB", u16 version, u64 directory offset, u32 element count,
+ *              u32 canvas width, u32 canvas height, u64 created, u64 modified,
+ *              u64 thumbnail offset
+ * chunk     := u32 tag, u32 length, payload[length]
+ * section   := STRS, COLR, FONT, IREF, ELEM, END
+ * </pre>
+ *
+ * Offsets are from the start of the magic number and point at a chunk's tag.
+ * The header names the {@code DIR } chunk in effect; any chunk it does not
+ * reach is unused space. The rest of the header describes the drawing without
+ * decoding it, for previews: times are milliseconds since the epoch, a canvas
+ * size of 0 means unknown and a thumbnail offset of 0 means none. Chunks:
+ * <ul>
+ * <li>{@code DIR } directory: varint image count, then (hash string, varint width,
+ * varint height, u64 offset, varint length) per distinct image; varint segment
+ * count, then (u64 offset, varint length, varint element count) per segment,
+ * topmost first</li>
+ * <li>{@code BLOB} the encoded bytes of one image as imported</li>
+ * <li>{@code SEGM} a run of elements as one section</li>
+ * <li>{@code THMB} a PNG of the drawing at most {@link #THUMBNAIL_SIZE} pixels on its longer side</li>
+ * </ul>
+ * A section is a self-contained list of elements with its own tables:
+ * <ul>
+ * <li>{@code STRS} string table: varint count, then (varint length, UTF-8 bytes)</li>
+ * <li>{@code COLR} color table: varint count, then ARGB ints</li>
+ * <li>{@code FONT} font table: varint count, then (string ref name, style, float size)</li>
+ * <li>{@code IREF} images used: varint count, then hash strings of images in the directory</li>
+ * <li>{@code ELEM} elements, topmost first: varint count, then one record each</li>
+ * <li>{@code END } empty, marks a complete section</li>
+ * </ul>
+ * Readers skip chunks they do not know. References into the tables are
+ * written as {@code index + 1}, with 0 meaning null. Point lists are
+ * zig-zag varint deltas from the previous point.
+ * <p>
+ * Because segments depend on nothing but the images in the directory, a save
+ * can append the segments that changed, a thumbnail and a new directory and
+ * then rewrite the header in one write, leaving unchanged segments where they
+ * are; a save interrupted before the header is rewritten leaves the previous
+ * directory in effect. Autosave journal fragments are bare sections.
+ */
+final class PfdFormat {
+    static final int MAGIC = tag("PFDB");
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 50;
+    // Everything after the version is rewritten when a save is appended.
+    static final int DIRECTORY_OFFSET_POSITION = 6;
+    static final int CHUNK_HEADER_SIZE = 8;
+    static final int THUMBNAIL_SIZE = 160;
+
+    static final int CHUNK_STRINGS = tag("STRS");
+    static final int CHUNK_COLORS = tag("COLR");
+    static final int CHUNK_FONTS = tag("FONT");
+    static final int CHUNK_BLOBS = tag("BLOB");
+    static final int CHUNK_IMAGE_REFS = tag("IREF");
+    static final int CHUNK_ELEMENTS = tag("ELEM");
+    static final int CHUNK_END = tag("END ");
+    static final int CHUNK_DIRECTORY = tag("DIR ");
+    static final int CHUNK_SEGMENT = tag("SEGM");
+    static final int CHUNK_THUMBNAIL = tag("THMB");
+
+    static final int TYPE_RECTANGLE = 1;
+    static final int TYPE_ROUND_RECTANGLE = 2;
+    static final int TYPE_CIRCLE = 3;
+    static final int TYPE_LINE = 4;
+    static final int TYPE_POLYGON = 5;
+    static final int TYPE_TEXT = 6;
+    static final int TYPE_FREEHAND = 7;
+    static final int TYPE_BEZIER = 8;
+    static final int TYPE_IMAGE = 9;
+
+    static final int FLAG_SHADOW = 1;
+    static final int FLAG_FILL = 1 << 1;
+    static final int FLAG_STROKE = 1 << 2;
+    static final int FLAG_CUBIC = 1 << 3;
+
+    private PfdFormat() {
+    }
+
+    static int tag(String name) {
+        return (name.charAt(0) << 24) | (name.charAt(1) << 16) | (name.charAt(2) << 8) | name.charAt(3);
+    }
+}
@@ -0,0 +1,103 @@
+package app;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over one chunk's bytes with the decodings used by {@link PfdReader}.
+ * Reads past the end of the chunk fail instead of running into the next one.
+ * The bytes may be a heap array or a slice of a memory-mapped file.
+ */
+final class PfdInput {
+    private final ByteBuffer bytes;
+
+    PfdInput(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @param bytes read from its position to its limit; the buffer itself is not modified
+     */
+    PfdInput(ByteBuffer bytes) {
+        this.bytes = bytes.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    int remaining() {
+        return bytes.remaining();
+    }
+
+    int readUnsignedByte() throws IOException {
+        require(1);
+        return bytes.get() & 0xFF;
+    }
+
+    int readInt() throws IOException {
+        require(4);
+        return bytes.getInt();
+    }
+
+    long readLong() throws IOException {
+        require(8);
+        return bytes.getLong();
+    }
+
+    float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt drawing file: malformed varint.");
+    }
+
+    int readSignedVarInt() throws IOException {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Reads a count and rejects any larger than the bytes left, since every
+     * counted item takes at least one byte.
+     */
+    int readCount() throws IOException {
+        int count = readVarInt();
+        if (count < 0 || count > remaining()) {
+            throw new IOException("Corrupt drawing file: count exceeds chunk size.");
+        }
+        return count;
+    }
+
+    byte[] readBytes(int length) throws IOException {
+        require(length);
+        byte[] result = new byte[length];
+        bytes.get(result);
+        return result;
+    }
+
+    String readString() throws IOException {
+        int length = readCount();
+        if (bytes.hasArray()) {
+            String value = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), length,
+                    StandardCharsets.UTF_8);
+            bytes.position(bytes.position() + length);
+            return value;
+        }
+        return new String(readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    private void require(int count) throws IOException {
+        if (count < 0 || count > bytes.remaining()) {
+            throw new EOFException("Corrupt drawing file: record runs past the end of its chunk.");
+        }
+    }
+}
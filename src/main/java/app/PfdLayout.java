@@ -0,0 +1,183 @@
+package app;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import paintcomponents.ImageAsset;
+import paintcomponents.PaintElement;
+
+/**
+ * Where the segments and images of a saved binary drawing sit in its file,
+ * and which elements each segment was written from. The next save keeps every
+ * segment whose elements are still there, in order and unedited, and writes
+ * only the rest; elements are the live ones being edited, compared by identity.
+ */
+final class PfdLayout {
+    // Elements per segment written; small enough that an edit rewrites little.
+    static final int SEGMENT_SIZE = 256;
+
+    final File file;
+    final long fileLength;
+    final long lastModified;
+    // Bytes the directory refers to; the rest of the file is superseded chunks.
+    final long liveBytes;
+    // When the file was first saved, kept by every later save of it.
+    final long created;
+    final List<Segment> segments;
+    final Map<String, ImageEntry> images;
+    // The thumbnail the file was saved with, for the next save to redraw in part; null if unknown.
+    final DrawingThumbnail thumbnail;
+
+    PfdLayout(File file, long fileLength, long lastModified, long liveBytes, long created,
+              List<Segment> segments, Map<String, ImageEntry> images) {
+        this(file, fileLength, lastModified, liveBytes, created, segments, images, null);
+    }
+
+    private PfdLayout(File file, long fileLength, long lastModified, long liveBytes, long created,
+                      List<Segment> segments, Map<String, ImageEntry> images, DrawingThumbnail thumbnail) {
+        this.file = file;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.liveBytes = liveBytes;
+        this.created = created;
+        this.segments = Collections.unmodifiableList(segments);
+        this.images = Collections.unmodifiableMap(images);
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * @return the same layout, recorded as the current state of the given file
+     */
+    PfdLayout locatedAt(File target) {
+        return locatedAt(target, thumbnail);
+    }
+
+    /**
+     * @param thumbnail the thumbnail just written to the file, or null
+     * @return the same layout, recorded as the current state of the given file
+     */
+    PfdLayout locatedAt(File target, DrawingThumbnail thumbnail) {
+        File absolute = target.getAbsoluteFile();
+        return new PfdLayout(absolute, absolute.length(), absolute.lastModified(), liveBytes, created, segments, images,
+                thumbnail);
+    }
+
+    /**
+     * @return where the file holds each image's encoded bytes, by hash
+     */
+    Map<String, Long> imageOffsets() {
+        Map<String, Long> offsets = new HashMap<>();
+        for (ImageEntry entry : images.values()) {
+            offsets.put(entry.hash, entry.offset + PfdFormat.CHUNK_HEADER_SIZE);
+        }
+        return offsets;
+    }
+
+    /**
+     * @return true if the file is still exactly as this layout describes, so it can be appended to
+     */
+    boolean isCurrent(File target) {
+        File absolute = target.getAbsoluteFile();
+        return file != null && file.equals(absolute)
+                && absolute.length() == fileLength && absolute.lastModified() == lastModified;
+    }
+
+    /**
+     * One {@code SEGM} chunk.
+     */
+    static final class Segment {
+        final PaintElement[] elements;
+        final String[] imageHashes;
+        final long offset;
+        final int length;
+        // The thumbnail pixels each element covers, from DrawingThumbnail; null if not saved with one.
+        final int[] thumbnailBoxes;
+
+        Segment(PaintElement[] elements, String[] imageHashes, long offset, int length, int[] thumbnailBoxes) {
+            this.elements = elements;
+            this.imageHashes = imageHashes;
+            this.offset = offset;
+            this.length = length;
+            this.thumbnailBoxes = thumbnailBoxes;
+        }
+    }
+
+    /**
+     * One {@code BLOB} chunk.
+     */
+    static final class ImageEntry {
+        final String hash;
+        final int width;
+        final int height;
+        final long offset;
+        final int length;
+
+        ImageEntry(String hash, int width, int height, long offset, int length) {
+            this.hash = hash;
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * One segment of the file being saved: either kept as it is in the
+     * previous file, or new elements still to be encoded.
+     */
+    static final class Piece {
+        final Segment kept;
+        final PaintElement[] elements;
+        // Copies of the new elements taken on the Event Dispatch Thread; null for kept segments.
+        final List<PaintElement> snapshot;
+        PfdOutput encoded;
+        List<ImageAsset> images;
+        // Set when the save has a thumbnail; see Segment.thumbnailBoxes.
+        int[] thumbnailBoxes;
+
+        private Piece(Segment kept, PaintElement[] elements, List<PaintElement> snapshot) {
+            this.kept = kept;
+            this.elements = elements;
+            this.snapshot = snapshot;
+        }
+
+        static Piece kept(Segment segment) {
+            return new Piece(segment, segment.elements, null);
+        }
+
+        /**
+         * @param elements the live elements, recorded for the next save
+         * @param snapshot what to write for them; the same list when nothing is edited concurrently
+         */
+        static Piece added(List<PaintElement> elements, List<PaintElement> snapshot) {
+            return new Piece(null, elements.toArray(new PaintElement[0]), snapshot);
+        }
+
+        int size() {
+            return elements.length;
+        }
+    }
+
+    /**
+     * Splits a run of new elements into pieces of at most {@link #SEGMENT_SIZE}
+     * elements, as even in size as possible.
+     *
+     * @param snapshotter makes the copies to write, given a part of the run
+     */
+    static void addRun(List<Piece> pieces, List<PaintElement> run,
+                       UnaryOperator<List<PaintElement>> snapshotter) {
+        if (run.isEmpty()) {
+            return;
+        }
+        int count = (run.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        for (int i = 0; i < count; i++) {
+            List<PaintElement> part = new ArrayList<>(run.subList(run.size() * i / count, run.size() * (i + 1) / count));
+            pieces.add(Piece.added(part, snapshotter.apply(part)));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer with the primitive encodings used by {@link PfdWriter}.
+ * Unlike a {@code DataOutputStream} over a {@code ByteArrayOutputStream} it
+ * does not lock or dispatch per byte, which matters for long point lists.
+ * It is also an {@link OutputStream}, so encoders can write into it directly.
+ */
+final class PfdOutput extends OutputStream {
+    private byte[] bytes;
+    private int size;
+
+    PfdOutput(int capacity) {
+        bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public void write(int value) {
+        writeByte(value);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        writeBytes(data, offset, length);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(4);
+        bytes[size++] = (byte) (value >>> 24);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    void writeFloat(float value) {
+        writeInt(Float.floatToIntBits(value));
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Zig-zag encodes so small negative values stay short too.
+     */
+    void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeBytes(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, bytes, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a varint byte length followed by the UTF-8 bytes.
+     */
+    void writeString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(utf8.length);
+        writeBytes(utf8, 0, utf8.length);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * @return a view of the bytes written so far, valid until the next write or reset
+     */
+    ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package app;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import paintcomponents.BezierElement;
+import paintcomponents.CircleElement;
+import paintcomponents.FreehandElement;
+import paintcomponents.ImageAsset;
+import paintcomponents.ImageElement;
+import paintcomponents.ImagePool;
+import paintcomponents.LineElement;
+import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
+import paintcomponents.PolygonElement;
+import paintcomponents.RectangleElement;
+import paintcomponents.RoundRectangleElement;
+import paintcomponents.TextElement;
+
+/**
+ * Reads the binary {@code .pfd} format described in {@link PfdFormat}. Only
+ * plain values are decoded, so a crafted file can at worst fail to load; all
+ * counts and offsets are checked against the chunk or file they come from
+ * before allocating. Chunks are decoded in place from the file buffer, which
+ * may be mapped. Image bytes are left in the file when its location is
+ * given, and copied out of the buffer otherwise; either way undecoded.
+ * An instance reads one file or section, since the tables are per section.
+ */
+final class PfdReader {
+    // Report progress every 64 elements.
+    private static final int PROGRESS_INTERVAL_MASK = 63;
+    // Far more than a PNG of THUMBNAIL_SIZE square can take, so a bad length is not allocated.
+    private static final int MAX_THUMBNAIL_LENGTH = 1024 * 1024;
+
+    private String[] strings = new String[0];
+    private Color[] colors = new Color[0];
+    private Font[] fonts = new Font[0];
+    private ImageAsset[] images = new ImageAsset[0];
+    private String[] imageHashes = new String[0];
+    private PfdLayout layout;
+    private final Function<String, ImageAsset> imageResolver;
+    // The file being read, for images to be read from when decoded; null to copy them out.
+    private final File source;
+
+    PfdReader() {
+        this(hash -> null);
+    }
+
+    /**
+     * @param imageResolver looks up images named by hash in an {@code IREF} chunk; returns null if unknown
+     */
+    PfdReader(Function<String, ImageAsset> imageResolver) {
+        this.imageResolver = imageResolver;
+        this.source = null;
+    }
+
+    /**
+     * @param source the file about to be read, so its images are read from it
+     *               only when decoded, instead of being copied and hashed now
+     */
+    PfdReader(File source) {
+        this.imageResolver = hash -> null;
+        this.source = source;
+    }
+
+    /**
+     * @param file the whole file, positioned just after the magic number
+     */
+    List<PaintElement> read(ByteBuffer file, ProjectIOService.ProgressListener listener) throws IOException {
+        if (file.remaining() < 2) {
+            throw new EOFException("Drawing file is truncated.");
+        }
+        int start = file.position() - 4;
+        int version = file.getShort() & 0xFFFF;
+        if (version > PfdFormat.VERSION) {
+            throw new IOException("Drawing was saved by a newer version (format " + version + ").");
+        }
+        if (version != PfdFormat.VERSION) {
+            throw new IOException("File does not contain a valid drawing.");
+        }
+        return readSegments(file, start, listener);
+    }
+
+    /**
+     * @return where the segments and images of the file just read are
+     */
+    PfdLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Reads the segments the directory lists, each as a section of its own.
+     */
+    private List<PaintElement> readSegments(ByteBuffer file, int start, ProjectIOService.ProgressListener listener)
+            throws IOException {
+        if (file.remaining() < PfdFormat.HEADER_SIZE - PfdFormat.DIRECTORY_OFFSET_POSITION) {
+            throw new EOFException("Drawing file is truncated.");
+        }
+        long directoryOffset = file.getLong();
+        // Element count and canvas size; the directory has the former and loading needs neither.
+        file.position(file.position() + 12);
+        long created = file.getLong();
+        file.getLong();
+        long thumbnailOffset = file.getLong();
+        ByteBuffer directoryChunk = chunkAt(file, start, directoryOffset, PfdFormat.CHUNK_DIRECTORY);
+        long liveBytes = PfdFormat.HEADER_SIZE + PfdFormat.CHUNK_HEADER_SIZE + directoryChunk.remaining();
+        if (thumbnailOffset != 0) {
+            try {
+                liveBytes += PfdFormat.CHUNK_HEADER_SIZE + chunkAt(file, start, thumbnailOffset, PfdFormat.CHUNK_THUMBNAIL).remaining();
+            } catch (IOException e) {
+                // Only previews need the thumbnail; the next save writes a new one.
+            }
+        }
+        PfdInput directory = new PfdInput(directoryChunk);
+
+        Map<String, PfdLayout.ImageEntry> entries = new LinkedHashMap<>();
+        Map<String, ImageAsset> assets = new HashMap<>();
+        int imageCount = directory.readCount();
+        for (int i = 0; i < imageCount; i++) {
+            String hash = directory.readString();
+            int width = directory.readVarInt();
+            int height = directory.readVarInt();
+            long offset = directory.readLong();
+            int length = directory.readVarInt();
+            if (width < 0 || height < 0) {
+                throw new IOException("Corrupt drawing file: negative image size.");
+            }
+            PfdInput blob = new PfdInput(chunkAt(file, start, offset, PfdFormat.CHUNK_BLOBS));
+            if (blob.remaining() != length) {
+                throw new IOException("Corrupt drawing file: image size does not match its chunk.");
+            }
+            // The hash is checked when the bytes are read for decoding, not for every image at open.
+            assets.put(hash, source != null
+                    ? ImagePool.fromFile(hash, source, offset + PfdFormat.CHUNK_HEADER_SIZE, length, width, height)
+                    : checkHash(ImagePool.fromEncodedLazily(blob.readBytes(length), width, height), hash));
+            entries.put(hash, new PfdLayout.ImageEntry(hash, width, height, offset, length));
+            liveBytes += PfdFormat.CHUNK_HEADER_SIZE + length;
+        }
+
+        int segmentCount = directory.readCount();
+        long[] offsets = new long[segmentCount];
+        int[] counts = new int[segmentCount];
+        long total = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            offsets[i] = directory.readLong();
+            directory.readVarInt();
+            counts[i] = directory.readVarInt();
+            total += counts[i];
+            if (counts[i] < 0 || total > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt drawing file: bad segment size.");
+            }
+        }
+        int elementTotal = (int) total;
+        List<PaintElement> elements = new ArrayList<>(Math.min(elementTotal, file.limit() - start));
+        List<PfdLayout.Segment> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            ByteBuffer payload = chunkAt(file, start, offsets[i], PfdFormat.CHUNK_SEGMENT);
+            int length = payload.remaining();
+            PfdReader section = new PfdReader(assets::get);
+            int before = elements.size();
+            List<PaintElement> part = section.readSection(payload,
+                    (done, ignored) -> listener.progress(before + done, elementTotal));
+            if (part.size() != counts[i]) {
+                throw new IOException("Corrupt drawing file: segment holds a different number of elements.");
+            }
+            elements.addAll(part);
+            segments.add(new PfdLayout.Segment(part.toArray(new PaintElement[0]), section.imageHashes, offsets[i], length, null));
+            liveBytes += PfdFormat.CHUNK_HEADER_SIZE + length;
+        }
+        layout = new PfdLayout(null, file.limit() - start, 0, liveBytes, created, segments, entries);
+        return elements;
+    }
+
+    /**
+     * Reads the header of a binary file and the thumbnail it points at,
+     * leaving the rest of the file alone.
+     *
+     * @return what the header says, or null if the file is not a binary drawing
+     *         of the current version
+     */
+    static DrawingInfo readInfo(FileChannel file) throws IOException {
+        ByteBuffer header = readFully(file, 0, PfdFormat.HEADER_SIZE);
+        if (header.remaining() < PfdFormat.HEADER_SIZE || header.getInt() != PfdFormat.MAGIC
+                || (header.getShort() & 0xFFFF) != PfdFormat.VERSION) {
+            return null;
+        }
+        header.getLong();
+        int elementCount = header.getInt();
+        int canvasWidth = header.getInt();
+        int canvasHeight = header.getInt();
+        long created = header.getLong();
+        long modified = header.getLong();
+        long thumbnailOffset = header.getLong();
+        if (elementCount < 0 || canvasWidth < 0 || canvasHeight < 0 || thumbnailOffset < 0) {
+            throw new IOException("Corrupt drawing file: negative value in header.");
+        }
+        BufferedImage thumbnail = null;
+        if (thumbnailOffset != 0) {
+            ByteBuffer chunkHeader = readFully(file, thumbnailOffset, PfdFormat.CHUNK_HEADER_SIZE);
+            if (chunkHeader.remaining() < PfdFormat.CHUNK_HEADER_SIZE || chunkHeader.getInt() != PfdFormat.CHUNK_THUMBNAIL) {
+                throw new IOException("Corrupt drawing file: header points at the wrong chunk.");
+            }
+            int length = chunkHeader.getInt();
+            if (length < 0 || length > MAX_THUMBNAIL_LENGTH) {
+                throw new IOException("Corrupt drawing file: thumbnail too large.");
+            }
+            if (length > file.size() - thumbnailOffset - PfdFormat.CHUNK_HEADER_SIZE) {
+                throw new EOFException("Drawing file is truncated.");
+            }
+            ByteBuffer png = readFully(file, thumbnailOffset + PfdFormat.CHUNK_HEADER_SIZE, length);
+            thumbnail = decodeThumbnail(png.array(), png.remaining());
+        }
+        return new DrawingInfo(elementCount, canvasWidth, canvasHeight, created, modified, thumbnail);
+    }
+
+    /**
+     * Decodes the thumbnail, refusing one larger than a writer would make
+     * before any pixels are allocated.
+     */
+    private static BufferedImage decodeThumbnail(byte[] png, int length) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(png, 0, length))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Corrupt drawing file: unreadable thumbnail.");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                if (reader.getWidth(0) > PfdFormat.THUMBNAIL_SIZE || reader.getHeight(0) > PfdFormat.THUMBNAIL_SIZE) {
+                    throw new IOException("Corrupt drawing file: thumbnail too large.");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Reads up to {@code length} bytes at a position; fewer if the file ends first.
+     */
+    private static ByteBuffer readFully(FileChannel file, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && file.read(buffer, position + buffer.position()) >= 0) {
+            // Positional reads until the buffer is full or the file ends.
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the payload of the chunk at an offset from the start of the
+     * file, checking that it is the kind of chunk expected there.
+     */
+    private static ByteBuffer chunkAt(ByteBuffer file, int start, long offset, int tag) throws IOException {
+        if (offset < 0 || offset > file.limit() - start - PfdFormat.CHUNK_HEADER_SIZE) {
+            throw new EOFException("Drawing file is truncated.");
+        }
+        int position = start + (int) offset;
+        if (file.getInt(position) != tag) {
+            throw new IOException("Corrupt drawing file: directory points at the wrong chunk.");
+        }
+        int length = file.getInt(position + 4);
+        int payloadStart = position + PfdFormat.CHUNK_HEADER_SIZE;
+        if (length < 0 || length > file.limit() - payloadStart) {
+            throw new EOFException("Drawing file is truncated.");
+        }
+        ByteBuffer payload = file.duplicate();
+        payload.limit(payloadStart + length);
+        payload.position(payloadStart);
+        return payload;
+    }
+
+    /**
+     * Reads chunks up to {@code END}: a segment or a journal fragment.
+     *
+     * @param section positioned at the first chunk
+     */
+    List<PaintElement> readSection(ByteBuffer section, ProjectIOService.ProgressListener listener)
+            throws IOException {
+        List<PaintElement> elements = null;
+        while (true) {
+            if (section.remaining() < 8) {
+                throw new EOFException("Drawing file is truncated.");
+            }
+            int tag = section.getInt();
+            int length = section.getInt();
+            if (length < 0) {
+                throw new IOException("Corrupt drawing file: chunk too large.");
+            }
+            if (tag == PfdFormat.CHUNK_END) {
+                break;
+            }
+            PfdInput chunk = nextChunk(section, length);
+            if (tag == PfdFormat.CHUNK_STRINGS) {
+                strings = readStrings(chunk);
+            } else if (tag == PfdFormat.CHUNK_COLORS) {
+                colors = readColors(chunk);
+            } else if (tag == PfdFormat.CHUNK_FONTS) {
+                fonts = readFonts(chunk);
+            } else if (tag == PfdFormat.CHUNK_IMAGE_REFS) {
+                images = readImageReferences(chunk);
+            } else if (tag == PfdFormat.CHUNK_ELEMENTS) {
+                elements = readElements(chunk, listener);
+            }
+        }
+        if (elements == null) {
+            throw new IOException("File does not contain a valid drawing.");
+        }
+        return elements;
+    }
+
+    /**
+     * Returns a view of the next {@code length} bytes and moves past them; a
+     * corrupt length fails as truncation rather than reading into the void.
+     */
+    private static PfdInput nextChunk(ByteBuffer file, int length) throws IOException {
+        if (length > file.remaining()) {
+            throw new EOFException("Drawing file is truncated.");
+        }
+        ByteBuffer payload = file.duplicate();
+        payload.limit(payload.position() + length);
+        file.position(file.position() + length);
+        return new PfdInput(payload);
+    }
+
+    private static String[] readStrings(PfdInput in) throws IOException {
+        String[] table = new String[in.readCount()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = in.readString();
+        }
+        return table;
+    }
+
+    private static Color[] readColors(PfdInput in) throws IOException {
+        Color[] table = new Color[in.readCount()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = new Color(in.readInt(), true);
+        }
+        return table;
+    }
+
+    private Font[] readFonts(PfdInput in) throws IOException {
+        Font[] table = new Font[in.readCount()];
+        for (int i = 0; i < table.length; i++) {
+            String name = stringAt(in.readVarInt());
+            int style = in.readVarInt();
+            float size = in.readFloat();
+            table[i] = new Font(name, style, 1).deriveFont(size);
+        }
+        return table;
+    }
+
+    private ImageAsset[] readImageReferences(PfdInput in) throws IOException {
+        ImageAsset[] table = new ImageAsset[in.readCount()];
+        imageHashes = new String[table.length];
+        for (int i = 0; i < table.length; i++) {
+            String hash = in.readString();
+            imageHashes[i] = hash;
+            table[i] = imageResolver.apply(hash);
+            if (table[i] == null) {
+                throw new IOException("Corrupt drawing file: unknown image " + hash + ".");
+            }
+        }
+        return table;
+    }
+
+    private static ImageAsset checkHash(ImageAsset asset, String hash) throws IOException {
+        if (!asset.getHash().equals(hash)) {
+            throw new IOException("Corrupt drawing file: image data does not match its hash.");
+        }
+        return asset;
+    }
+
+    private List<PaintElement> readElements(PfdInput in, ProjectIOService.ProgressListener listener)
+            throws IOException {
+        int count = in.readCount();
+        List<PaintElement> elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(readElement(in));
+            if (((i + 1) & PROGRESS_INTERVAL_MASK) == 0 && !listener.progress(i + 1, count)) {
+                throw new CancellationException("Load cancelled");
+            }
+        }
+        return elements;
+    }
+
+    private PaintElement readElement(PfdInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        String displayName = stringAt(in.readVarInt());
+        boolean fill = (flags & PfdFormat.FLAG_FILL) != 0;
+        boolean stroke = (flags & PfdFormat.FLAG_STROKE) != 0;
+        PaintElement element;
+        switch (type) {
+            case PfdFormat.TYPE_RECTANGLE: {
+                int x = in.readSignedVarInt(), y = in.readSignedVarInt();
+                int w = in.readSignedVarInt(), h = in.readSignedVarInt();
+                Color fillColor = colorAt(in.readVarInt()), strokeColor = colorAt(in.readVarInt());
+                element = new RectangleElement(x, y, w, h, fillColor, strokeColor, in.readFloat(), fill, stroke);
+                break;
+            }
+            case PfdFormat.TYPE_ROUND_RECTANGLE: {
+                int x = in.readSignedVarInt(), y = in.readSignedVarInt();
+                int w = in.readSignedVarInt(), h = in.readSignedVarInt();
+                int arcWidth = in.readVarInt(), arcHeight = in.readVarInt();
+                Color fillColor = colorAt(in.readVarInt()), strokeColor = colorAt(in.readVarInt());
+                element = new RoundRectangleElement(x, y, w, h, arcWidth, arcHeight,
+                        fillColor, strokeColor, in.readFloat(), fill, stroke);
+                break;
+            }
+            case PfdFormat.TYPE_CIRCLE: {
+                int x = in.readSignedVarInt(), y = in.readSignedVarInt();
+                int w = in.readSignedVarInt(), h = in.readSignedVarInt();
+                Color fillColor = colorAt(in.readVarInt()), strokeColor = colorAt(in.readVarInt());
+                element = new CircleElement(x, y, w, h, fillColor, strokeColor, in.readFloat(), fill, stroke);
+                break;
+            }
+            case PfdFormat.TYPE_LINE: {
+                int x1 = in.readSignedVarInt(), y1 = in.readSignedVarInt();
+                int x2 = in.readSignedVarInt(), y2 = in.readSignedVarInt();
+                Color strokeColor = colorAt(in.readVarInt());
+                element = new LineElement(x1, y1, x2, y2, strokeColor, in.readFloat());
+                break;
+            }
+            case PfdFormat.TYPE_POLYGON: {
+                Color fillColor = colorAt(in.readVarInt()), strokeColor = colorAt(in.readVarInt());
+                float strokeWidth = in.readFloat();
+                int n = in.readCount();
+                List<Point> points = new ArrayList<>(n);
+                int x = 0, y = 0;
+                for (int i = 0; i < n; i++) {
+                    x += in.readSignedVarInt();
+                    y += in.readSignedVarInt();
+                    points.add(new Point(x, y));
+                }
+                element = new PolygonElement(points, fillColor, strokeColor, strokeWidth, fill, stroke);
+                break;
+            }
+            case PfdFormat.TYPE_TEXT: {
+                int x = in.readSignedVarInt(), y = in.readSignedVarInt();
+                String text = stringAt(in.readVarInt());
+                Font font = fontAt(in.readVarInt());
+                element = new TextElement(text, x, y, font, colorAt(in.readVarInt()));
+                break;
+            }
+            case PfdFormat.TYPE_FREEHAND: {
+                Color strokeColor = colorAt(in.readVarInt());
+                float strokeWidth = in.readFloat();
+                element = new FreehandElement(readPoints(in), strokeColor, strokeWidth,
+                        (flags & PfdFormat.FLAG_CUBIC) != 0);
+                break;
+            }
+            case PfdFormat.TYPE_BEZIER: {
+                Color strokeColor = colorAt(in.readVarInt());
+                float strokeWidth = in.readFloat();
+                element = new BezierElement(readPoints(in), strokeColor, strokeWidth);
+                break;
+            }
+            case PfdFormat.TYPE_IMAGE: {
+                int x = in.readSignedVarInt(), y = in.readSignedVarInt();
+                String path = stringAt(in.readVarInt());
+                element = new ImageElement(imageAt(in.readVarInt()), new Point(x, y), path, displayName);
+                break;
+            }
+            default:
+                throw new IOException("Unknown element type " + type + " in drawing file.");
+        }
+        element.setShadow((flags & PfdFormat.FLAG_SHADOW) != 0);
+        element.setDisplayName(displayName);
+        return element;
+    }
+
+    private static PointBuffer readPoints(PfdInput in) throws IOException {
+        int n = in.readCount();
+        PointBuffer points = new PointBuffer(n);
+        int x = 0, y = 0;
+        for (int i = 0; i < n; i++) {
+            x += in.readSignedVarInt();
+            y += in.readSignedVarInt();
+            points.add(x, y);
+        }
+        return points;
+    }
+
+    private String stringAt(int ref) throws IOException {
+        return ref == 0 ? null : strings[checkRef(ref, strings.length)];
+    }
+
+    private Color colorAt(int ref) throws IOException {
+        return ref == 0 ? null : colors[checkRef(ref, colors.length)];
+    }
+
+    private Font fontAt(int ref) throws IOException {
+        return ref == 0 ? null : fonts[checkRef(ref, fonts.length)];
+    }
+
+    private ImageAsset imageAt(int ref) throws IOException {
+        return ref == 0 ? null : images[checkRef(ref, images.length)];
+    }
+
+    private static int checkRef(int ref, int tableSize) throws IOException {
+        if (ref < 0 || ref > tableSize) {
+            throw new IOException("Corrupt drawing file: table reference out of range.");
+        }
+        return ref - 1;
+    }
+}
@@ -0,0 +1,647 @@
+package app;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import javax.imageio.ImageIO;
+
+import paintcomponents.BezierElement;
+import paintcomponents.CircleElement;
+import paintcomponents.FreehandElement;
+import paintcomponents.ImageAsset;
+import paintcomponents.ImageElement;
+import paintcomponents.LineElement;
+import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
+import paintcomponents.PolygonElement;
+import paintcomponents.RectangleElement;
+import paintcomponents.RoundRectangleElement;
+import paintcomponents.TextElement;
+
+/**
+ * Writes drawings in the binary {@code .pfd} format described in {@link PfdFormat}.
+ * An instance encodes one section; elements are encoded first so the string,
+ * color, font and image tables they refer to can be written ahead of them.
+ * The static methods lay sections out into a file, either whole or appended
+ * to the previous version of it.
+ */
+final class PfdWriter {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<Color> colors = new ArrayList<>();
+    private final Map<Integer, Integer> colorIndex = new HashMap<>();
+    private final List<Font> fonts = new ArrayList<>();
+    private final Map<Font, Integer> fontIndex = new HashMap<>();
+    private final List<ImageAsset> images = new ArrayList<>();
+    private final Map<String, Integer> imageIndex = new HashMap<>();
+
+    /**
+     * Encodes elements as one section, naming the images they show by hash.
+     *
+     * @throws IllegalArgumentException if an element is of a type the format has no record for
+     */
+    PfdOutput writeSection(List<PaintElement> elements) {
+        PfdOutput elementOut = new PfdOutput(elements.size() * 32);
+        elementOut.writeVarInt(elements.size());
+        for (PaintElement element : elements) {
+            writeElement(elementOut, element);
+        }
+
+        PfdOutput out = new PfdOutput(elementOut.size() + 512);
+        writeChunk(out, PfdFormat.CHUNK_STRINGS, stringTable());
+        writeChunk(out, PfdFormat.CHUNK_COLORS, colorTable());
+        writeChunk(out, PfdFormat.CHUNK_FONTS, fontTable());
+        writeChunk(out, PfdFormat.CHUNK_IMAGE_REFS, imageReferences());
+        writeChunk(out, PfdFormat.CHUNK_ELEMENTS, elementOut);
+        writeChunk(out, PfdFormat.CHUNK_END, new PfdOutput(0));
+        return out;
+    }
+
+    /**
+     * @return the distinct images the written elements use, in table order
+     */
+    List<ImageAsset> getImages() {
+        return images;
+    }
+
+    /**
+     * Writes a complete file of the given elements.
+     *
+     * @return the layout written
+     */
+    static PfdLayout write(OutputStream target, List<PaintElement> elements, ProjectIOService.ProgressListener listener)
+            throws IOException {
+        List<PaintElement> present = new ArrayList<>(elements.size());
+        for (PaintElement element : elements) {
+            if (element != null) {
+                present.add(element);
+            }
+        }
+        List<PfdLayout.Piece> pieces = new ArrayList<>();
+        PfdLayout.addRun(pieces, present, run -> run);
+        long now = System.currentTimeMillis();
+        return writeFile(target, pieces, null, null, new DrawingInfo(present.size(), 0, 0, now, now, null), listener);
+    }
+
+    /**
+     * Writes a complete file: header, images, segments, thumbnail, then the
+     * directory. Kept segments, and images no new segment supplies, are copied
+     * byte for byte from the previous file, so compacting does not re-encode them.
+     *
+     * @param source the previous file, open for reading, or null if nothing is kept
+     * @param previous its layout, or null
+     * @param info what the header says about the drawing
+     * @return the layout written; {@link PfdLayout#locatedAt} completes it once the file is in place
+     */
+    static PfdLayout writeFile(OutputStream target, List<PfdLayout.Piece> pieces, FileChannel source,
+                               PfdLayout previous, DrawingInfo info, ProjectIOService.ProgressListener listener)
+            throws IOException {
+        encode(pieces, listener);
+        Placement placement = place(pieces, previous, false, PfdFormat.HEADER_SIZE, info);
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(PfdFormat.MAGIC);
+        out.writeShort(PfdFormat.VERSION);
+        header(placement, info).writeTo(out);
+        writeBody(out, placement, pieces, source, false);
+        out.flush();
+        return placement.toLayout(info);
+    }
+
+    /**
+     * Appends the images and segments the previous file lacks, plus a
+     * thumbnail and a new directory, then rewrites the header after the
+     * version in one write. Until that last write the previous directory is
+     * in effect, so a failed append leaves the file as it was once the
+     * partial tail is cut off again.
+     *
+     * @param file the previous file, open for reading and writing and still as {@code previous} describes it
+     * @return the layout written; {@link PfdLayout#locatedAt} completes it
+     */
+    static PfdLayout append(FileChannel file, PfdLayout previous, List<PfdLayout.Piece> pieces, DrawingInfo info,
+                            ProjectIOService.ProgressListener listener) throws IOException {
+        encode(pieces, listener);
+        Placement placement = place(pieces, previous, true, previous.fileLength, info);
+        boolean committed = false;
+        try {
+            file.position(previous.fileLength);
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file), COPY_BUFFER_SIZE));
+            writeBody(out, placement, pieces, null, true);
+            out.flush();
+            file.force(false);
+            ByteBuffer header = header(placement, info).asByteBuffer();
+            while (header.hasRemaining()) {
+                file.write(header, PfdFormat.DIRECTORY_OFFSET_POSITION + header.position());
+            }
+            committed = true;
+            file.force(false);
+        } finally {
+            if (!committed) {
+                file.truncate(previous.fileLength);
+            }
+        }
+        return placement.toLayout(info);
+    }
+
+    /**
+     * @return true if appending these pieces would leave more of the file
+     *         unused than in use, so it should be rewritten instead
+     */
+    static boolean needsCompaction(PfdLayout previous, List<PfdLayout.Piece> pieces, DrawingInfo info,
+                                   ProjectIOService.ProgressListener listener) throws IOException {
+        encode(pieces, listener);
+        Placement placement = place(pieces, previous, true, previous.fileLength, info);
+        return placement.end - placement.liveBytes > placement.liveBytes;
+    }
+
+    /**
+     * The header from the directory offset on, as placed.
+     */
+    private static PfdOutput header(Placement placement, DrawingInfo info) {
+        PfdOutput out = new PfdOutput(PfdFormat.HEADER_SIZE - PfdFormat.DIRECTORY_OFFSET_POSITION);
+        out.writeLong(placement.directoryOffset);
+        out.writeInt(info.getElementCount());
+        out.writeInt(info.getCanvasWidth());
+        out.writeInt(info.getCanvasHeight());
+        out.writeLong(info.getCreated());
+        out.writeLong(info.getModified());
+        out.writeLong(placement.thumbnail != null ? placement.thumbnailOffset : 0);
+        return out;
+    }
+
+    /**
+     * Encodes the pieces not encoded yet, reporting progress in elements.
+     */
+    private static void encode(List<PfdLayout.Piece> pieces, ProjectIOService.ProgressListener listener) {
+        int total = 0;
+        for (PfdLayout.Piece piece : pieces) {
+            total += piece.size();
+        }
+        int done = 0;
+        for (PfdLayout.Piece piece : pieces) {
+            if (piece.kept == null && piece.encoded == null) {
+                PfdWriter writer = new PfdWriter();
+                piece.encoded = writer.writeSection(piece.snapshot);
+                piece.images = new ArrayList<>(writer.getImages());
+            }
+            done += piece.size();
+            if (!listener.progress(done, total)) {
+                throw new CancellationException("Save cancelled");
+            }
+        }
+    }
+
+    /**
+     * Assigns offsets to the chunks of a file, starting at {@code start}.
+     *
+     * @param appending true to leave images and kept segments where {@code previous} has them
+     */
+    private static Placement place(List<PfdLayout.Piece> pieces, PfdLayout previous, boolean appending, long start,
+                                   DrawingInfo info) throws IOException {
+        Map<String, ImageAsset> assets = new HashMap<>();
+        for (PfdLayout.Piece piece : pieces) {
+            if (piece.kept == null) {
+                for (ImageAsset asset : piece.images) {
+                    assets.putIfAbsent(asset.getHash(), asset);
+                }
+            }
+        }
+
+        Placement placement = new Placement();
+        long offset = start;
+        for (PfdLayout.Piece piece : pieces) {
+            for (String hash : hashesOf(piece)) {
+                if (placement.images.containsKey(hash)) {
+                    continue;
+                }
+                PfdLayout.ImageEntry old = previous != null ? previous.images.get(hash) : null;
+                if (appending && old != null) {
+                    placement.images.put(hash, old);
+                    continue;
+                }
+                ImageAsset asset = assets.get(hash);
+                if (asset == null && old == null) {
+                    throw new IOException("Image " + hash + " is missing from the previous file.");
+                }
+                PfdLayout.ImageEntry entry = asset != null
+                        ? new PfdLayout.ImageEntry(hash, asset.getWidth(), asset.getHeight(), offset, asset.getEncodedLength())
+                        : new PfdLayout.ImageEntry(hash, old.width, old.height, offset, old.length);
+                placement.images.put(hash, entry);
+                placement.imageWrites.add(new ImageSource(entry, asset, old));
+                offset += PfdFormat.CHUNK_HEADER_SIZE + entry.length;
+            }
+        }
+        for (PfdLayout.Piece piece : pieces) {
+            if (piece.kept != null && appending) {
+                placement.segments.add(piece.thumbnailBoxes == piece.kept.thumbnailBoxes ? piece.kept
+                        : new PfdLayout.Segment(piece.elements, piece.kept.imageHashes, piece.kept.offset,
+                                piece.kept.length, piece.thumbnailBoxes));
+                continue;
+            }
+            int length = piece.kept != null ? piece.kept.length : piece.encoded.size();
+            placement.segments.add(new PfdLayout.Segment(piece.elements, hashesOf(piece), offset, length,
+                    piece.thumbnailBoxes));
+            offset += PfdFormat.CHUNK_HEADER_SIZE + length;
+        }
+
+        if (info.getThumbnail() != null) {
+            placement.thumbnail = new PfdOutput(8 * 1024);
+            if (!ImageIO.write(info.getThumbnail(), "png", placement.thumbnail)) {
+                throw new IOException("No png writer available.");
+            }
+            placement.thumbnailOffset = offset;
+            offset += PfdFormat.CHUNK_HEADER_SIZE + placement.thumbnail.size();
+        }
+
+        placement.directory = directory(placement);
+        placement.directoryOffset = offset;
+        placement.end = offset + PfdFormat.CHUNK_HEADER_SIZE + placement.directory.size();
+        long live = PfdFormat.HEADER_SIZE + PfdFormat.CHUNK_HEADER_SIZE + placement.directory.size();
+        if (placement.thumbnail != null) {
+            live += PfdFormat.CHUNK_HEADER_SIZE + placement.thumbnail.size();
+        }
+        for (PfdLayout.ImageEntry entry : placement.images.values()) {
+            live += PfdFormat.CHUNK_HEADER_SIZE + entry.length;
+        }
+        for (PfdLayout.Segment segment : placement.segments) {
+            live += PfdFormat.CHUNK_HEADER_SIZE + segment.length;
+        }
+        placement.liveBytes = live;
+        if (placement.end > Integer.MAX_VALUE) {
+            throw new IOException("The drawing exceeds the 2 GB the file format can hold.");
+        }
+        return placement;
+    }
+
+    private static String[] hashesOf(PfdLayout.Piece piece) {
+        if (piece.kept != null) {
+            return piece.kept.imageHashes;
+        }
+        String[] hashes = new String[piece.images.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = piece.images.get(i).getHash();
+        }
+        return hashes;
+    }
+
+    private static PfdOutput directory(Placement placement) {
+        PfdOutput out = new PfdOutput(placement.images.size() * 88 + placement.segments.size() * 16 + 16);
+        out.writeVarInt(placement.images.size());
+        for (PfdLayout.ImageEntry entry : placement.images.values()) {
+            out.writeString(entry.hash);
+            out.writeVarInt(entry.width);
+            out.writeVarInt(entry.height);
+            out.writeLong(entry.offset);
+            out.writeVarInt(entry.length);
+        }
+        out.writeVarInt(placement.segments.size());
+        for (PfdLayout.Segment segment : placement.segments) {
+            out.writeLong(segment.offset);
+            out.writeVarInt(segment.length);
+            out.writeVarInt(segment.elements.length);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the placed image, segment and thumbnail chunks in offset order, then the directory.
+     */
+    private static void writeBody(DataOutputStream out, Placement placement, List<PfdLayout.Piece> pieces,
+                                  FileChannel source, boolean appending) throws IOException {
+        for (ImageSource image : placement.imageWrites) {
+            out.writeInt(PfdFormat.CHUNK_BLOBS);
+            out.writeInt(image.entry.length);
+            if (image.asset != null) {
+                image.asset.writeEncodedTo(out);
+            } else {
+                copy(source, image.copyFrom.offset + PfdFormat.CHUNK_HEADER_SIZE, image.entry.length, out);
+            }
+        }
+        for (PfdLayout.Piece piece : pieces) {
+            if (piece.kept != null) {
+                if (!appending) {
+                    out.writeInt(PfdFormat.CHUNK_SEGMENT);
+                    out.writeInt(piece.kept.length);
+                    copy(source, piece.kept.offset + PfdFormat.CHUNK_HEADER_SIZE, piece.kept.length, out);
+                }
+            } else {
+                out.writeInt(PfdFormat.CHUNK_SEGMENT);
+                out.writeInt(piece.encoded.size());
+                piece.encoded.writeTo(out);
+            }
+        }
+        if (placement.thumbnail != null) {
+            out.writeInt(PfdFormat.CHUNK_THUMBNAIL);
+            out.writeInt(placement.thumbnail.size());
+            placement.thumbnail.writeTo(out);
+        }
+        out.writeInt(PfdFormat.CHUNK_DIRECTORY);
+        out.writeInt(placement.directory.size());
+        placement.directory.writeTo(out);
+    }
+
+    private static void copy(FileChannel source, long position, int length, OutputStream out) throws IOException {
+        if (source == null) {
+            throw new IOException("Previous file is not available to copy from.");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(length, COPY_BUFFER_SIZE));
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Previous file ended while copying from it.");
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    private static void writeChunk(PfdOutput out, int tag, PfdOutput payload) {
+        out.writeInt(tag);
+        out.writeInt(payload.size());
+        out.writeBytes(payload.asByteBuffer().array(), 0, payload.size());
+    }
+
+    /**
+     * Offsets chosen for one save, before anything is written.
+     */
+    private static final class Placement {
+        final Map<String, PfdLayout.ImageEntry> images = new LinkedHashMap<>();
+        final List<ImageSource> imageWrites = new ArrayList<>();
+        final List<PfdLayout.Segment> segments = new ArrayList<>();
+        PfdOutput thumbnail;
+        long thumbnailOffset;
+        PfdOutput directory;
+        long directoryOffset;
+        long end;
+        long liveBytes;
+
+        PfdLayout toLayout(DrawingInfo info) {
+            return new PfdLayout(null, end, 0, liveBytes, info.getCreated(), segments, images);
+        }
+    }
+
+    /**
+     * An image chunk to write, from its asset if one is at hand or else from the previous file.
+     */
+    private static final class ImageSource {
+        final PfdLayout.ImageEntry entry;
+        final ImageAsset asset;
+        final PfdLayout.ImageEntry copyFrom;
+
+        ImageSource(PfdLayout.ImageEntry entry, ImageAsset asset, PfdLayout.ImageEntry copyFrom) {
+            this.entry = entry;
+            this.asset = asset;
+            this.copyFrom = copyFrom;
+        }
+    }
+
+    private static int typeOf(PaintElement element) {
+        if (element instanceof RectangleElement) return PfdFormat.TYPE_RECTANGLE;
+        if (element instanceof RoundRectangleElement) return PfdFormat.TYPE_ROUND_RECTANGLE;
+        if (element instanceof CircleElement) return PfdFormat.TYPE_CIRCLE;
+        if (element instanceof LineElement) return PfdFormat.TYPE_LINE;
+        if (element instanceof PolygonElement) return PfdFormat.TYPE_POLYGON;
+        if (element instanceof TextElement) return PfdFormat.TYPE_TEXT;
+        if (element instanceof FreehandElement) return PfdFormat.TYPE_FREEHAND;
+        if (element instanceof BezierElement) return PfdFormat.TYPE_BEZIER;
+        if (element instanceof ImageElement) return PfdFormat.TYPE_IMAGE;
+        // Leaving it out would lose it and make the segment disagree with the elements recorded for it.
+        throw new IllegalArgumentException("Cannot save " + (element != null ? element.getClass().getName() : "a missing element")
+                + " in a drawing file.");
+    }
+
+    private void writeElement(PfdOutput out, PaintElement element) {
+        int type = typeOf(element);
+        int flags = element.hasShadow() ? PfdFormat.FLAG_SHADOW : 0;
+        if (element instanceof RectangleElement) {
+            RectangleElement rect = (RectangleElement) element;
+            flags |= fillStrokeFlags(rect.isFillEnabled(), rect.isStrokeEnabled());
+            writeHeader(out, type, flags, element);
+            writeRect(out, rect.getBounds());
+            writeFillStroke(out, rect.getFillColor(), rect.getStrokeColor(), rect.getStrokeWidth());
+        } else if (element instanceof RoundRectangleElement) {
+            RoundRectangleElement rect = (RoundRectangleElement) element;
+            flags |= fillStrokeFlags(rect.isFillEnabled(), rect.isStrokeEnabled());
+            writeHeader(out, type, flags, element);
+            writeRect(out, rect.getBounds());
+            out.writeVarInt(rect.getArcWidth());
+            out.writeVarInt(rect.getArcHeight());
+            writeFillStroke(out, rect.getFillColor(), rect.getStrokeColor(), rect.getStrokeWidth());
+        } else if (element instanceof CircleElement) {
+            CircleElement circle = (CircleElement) element;
+            flags |= fillStrokeFlags(circle.isFillEnabled(), circle.isStrokeEnabled());
+            writeHeader(out, type, flags, element);
+            writeRect(out, circle.getBounds());
+            writeFillStroke(out, circle.getFillColor(), circle.getStrokeColor(), circle.getStrokeWidth());
+        } else if (element instanceof LineElement) {
+            LineElement line = (LineElement) element;
+            writeHeader(out, type, flags, element);
+            out.writeSignedVarInt(line.getX1());
+            out.writeSignedVarInt(line.getY1());
+            out.writeSignedVarInt(line.getX2());
+            out.writeSignedVarInt(line.getY2());
+            out.writeVarInt(colorRef(line.getStrokeColor()));
+            out.writeFloat(line.getStrokeWidth());
+        } else if (element instanceof PolygonElement) {
+            PolygonElement polygonElement = (PolygonElement) element;
+            flags |= fillStrokeFlags(polygonElement.isFillEnabled(), polygonElement.isStrokeEnabled());
+            writeHeader(out, type, flags, element);
+            writeFillStroke(out, polygonElement.getFillColor(), polygonElement.getStrokeColor(),
+                    polygonElement.getStrokeWidth());
+            Polygon polygon = polygonElement.getPolygon();
+            out.writeVarInt(polygon.npoints);
+            int lastX = 0;
+            int lastY = 0;
+            for (int i = 0; i < polygon.npoints; i++) {
+                out.writeSignedVarInt(polygon.xpoints[i] - lastX);
+                out.writeSignedVarInt(polygon.ypoints[i] - lastY);
+                lastX = polygon.xpoints[i];
+                lastY = polygon.ypoints[i];
+            }
+        } else if (element instanceof TextElement) {
+            TextElement text = (TextElement) element;
+            writeHeader(out, type, flags, element);
+            Point position = text.getPosition();
+            out.writeSignedVarInt(position.x);
+            out.writeSignedVarInt(position.y);
+            out.writeVarInt(stringRef(text.getText()));
+            out.writeVarInt(fontRef(text.getFont()));
+            out.writeVarInt(colorRef(text.getColor()));
+        } else if (element instanceof FreehandElement) {
+            FreehandElement freehand = (FreehandElement) element;
+            if (freehand.isCubic()) {
+                flags |= PfdFormat.FLAG_CUBIC;
+            }
+            writeHeader(out, type, flags, element);
+            out.writeVarInt(colorRef(freehand.getStrokeColor()));
+            out.writeFloat(freehand.getStrokeWidth());
+            writePoints(out, freehand.getPoints());
+        } else if (element instanceof BezierElement) {
+            BezierElement bezier = (BezierElement) element;
+            writeHeader(out, type, flags, element);
+            out.writeVarInt(colorRef(bezier.getStrokeColor()));
+            out.writeFloat(bezier.getStrokeWidth());
+            writePoints(out, bezier.getPoints());
+        } else if (element instanceof ImageElement) {
+            ImageElement image = (ImageElement) element;
+            writeHeader(out, type, flags, element);
+            Point position = image.getPosition();
+            out.writeSignedVarInt(position.x);
+            out.writeSignedVarInt(position.y);
+            out.writeVarInt(stringRef(image.getImagePath()));
+            out.writeVarInt(imageRef(image.getAsset()));
+        }
+    }
+
+    private void writeHeader(PfdOutput out, int type, int flags, PaintElement element) {
+        out.writeByte(type);
+        out.writeByte(flags);
+        out.writeVarInt(stringRef(element.getDisplayName()));
+    }
+
+    private static int fillStrokeFlags(boolean fillEnabled, boolean strokeEnabled) {
+        return (fillEnabled ? PfdFormat.FLAG_FILL : 0) | (strokeEnabled ? PfdFormat.FLAG_STROKE : 0);
+    }
+
+    private static void writeRect(PfdOutput out, Rectangle bounds) {
+        out.writeSignedVarInt(bounds.x);
+        out.writeSignedVarInt(bounds.y);
+        out.writeSignedVarInt(bounds.width);
+        out.writeSignedVarInt(bounds.height);
+    }
+
+    private void writeFillStroke(PfdOutput out, Color fill, Color stroke, float strokeWidth) {
+        out.writeVarInt(colorRef(fill));
+        out.writeVarInt(colorRef(stroke));
+        out.writeFloat(strokeWidth);
+    }
+
+    private static void writePoints(PfdOutput out, PointBuffer points) {
+        int size = points.size();
+        out.writeVarInt(size);
+        int lastX = 0;
+        int lastY = 0;
+        for (int i = 0; i < size; i++) {
+            int x = points.getX(i);
+            int y = points.getY(i);
+            out.writeSignedVarInt(x - lastX);
+            out.writeSignedVarInt(y - lastY);
+            lastX = x;
+            lastY = y;
+        }
+    }
+
+    private int stringRef(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = stringIndex.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndex.put(value, index);
+        }
+        return index + 1;
+    }
+
+    private int imageRef(ImageAsset asset) {
+        if (asset == null) {
+            return 0;
+        }
+        Integer index = imageIndex.get(asset.getHash());
+        if (index == null) {
+            index = images.size();
+            images.add(asset);
+            imageIndex.put(asset.getHash(), index);
+        }
+        return index + 1;
+    }
+
+    private int colorRef(Color color) {
+        if (color == null) {
+            return 0;
+        }
+        Integer index = colorIndex.get(color.getRGB());
+        if (index == null) {
+            index = colors.size();
+            colors.add(color);
+            colorIndex.put(color.getRGB(), index);
+        }
+        return index + 1;
+    }
+
+    private int fontRef(Font font) {
+        if (font == null) {
+            return 0;
+        }
+        Integer index = fontIndex.get(font);
+        if (index == null) {
+            index = fonts.size();
+            fonts.add(font);
+            fontIndex.put(font, index);
+            stringRef(font.getName());
+        }
+        return index + 1;
+    }
+
+    private PfdOutput stringTable() {
+        PfdOutput out = new PfdOutput(256);
+        out.writeVarInt(strings.size());
+        for (String value : strings) {
+            out.writeString(value);
+        }
+        return out;
+    }
+
+    private PfdOutput colorTable() {
+        PfdOutput out = new PfdOutput(256);
+        out.writeVarInt(colors.size());
+        for (Color color : colors) {
+            out.writeInt(color.getRGB());
+        }
+        return out;
+    }
+
+    private PfdOutput imageReferences() {
+        PfdOutput out = new PfdOutput(images.size() * 72 + 8);
+        out.writeVarInt(images.size());
+        for (ImageAsset asset : images) {
+            out.writeString(asset.getHash());
+        }
+        return out;
+    }
+
+    private PfdOutput fontTable() {
+        PfdOutput out = new PfdOutput(256);
+        out.writeVarInt(fonts.size());
+        for (Font font : fonts) {
+            // Names were interned when the font was, so this never grows the table now.
+            out.writeVarInt(stringRef(font.getName()));
+            out.writeVarInt(font.getStyle());
+            out.writeFloat(font.getSize2D());
+        }
+        return out;
+    }
+}
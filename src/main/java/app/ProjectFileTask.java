@@ -0,0 +1,98 @@
+package app;
+
+import java.awt.Component;
+import java.beans.PropertyChangeEvent;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Runs a project save, load or image import off the Event Dispatch Thread. A
+ * {@link ProgressMonitor} shows up if the task takes more than a moment, and
+ * cancelling it stops the I/O at the next progress report. The worker still
+ * runs to the end of {@link #doInBackground()}, so a cancelled save is done
+ * touching the file before {@link #isFinished()} lets another task start.
+ *
+ * Subclasses do the I/O in {@link #doInBackground()}, passing {@code this} as
+ * the progress listener, and handle the outcome on the EDT in
+ * {@link #succeeded}, {@link #failed} and {@link #cancelled}.
+ */
+abstract class ProjectFileTask<T> extends SwingWorker<T, Void> implements ProjectIOService.ProgressListener {
+    private static final int CANCEL_POLL_MILLIS = 100;
+
+    private final ProgressMonitor monitor;
+    // Checks the monitor on the EDT, since the worker cannot ask it directly
+    private final Timer cancelPoll;
+    private volatile boolean cancelRequested;
+    private boolean finished;
+
+    ProjectFileTask(Component parent, String message) {
+        monitor = new ProgressMonitor(parent, message, null, 0, 100);
+        monitor.setMillisToDecideToPopup(250);
+        monitor.setMillisToPopup(500);
+        addPropertyChangeListener(this::onPropertyChange);
+        cancelPoll = new Timer(CANCEL_POLL_MILLIS, event -> {
+            if (monitor.isCanceled()) {
+                cancelRequested = true;
+            }
+        });
+        cancelPoll.start();
+    }
+
+    @Override
+    public boolean progress(int done, int total) {
+        if (total > 0) {
+            setProgress((int) Math.min(100, done * 100L / total));
+        }
+        return !cancelRequested;
+    }
+
+    /**
+     * @return true once the worker has returned and its outcome has been handled on the EDT
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    private void onPropertyChange(PropertyChangeEvent event) {
+        if ("progress".equals(event.getPropertyName())) {
+            monitor.setProgress((Integer) event.getNewValue());
+        }
+    }
+
+    @Override
+    protected final void done() {
+        cancelPoll.stop();
+        monitor.close();
+        try {
+            handleOutcome();
+        } finally {
+            finished = true;
+        }
+    }
+
+    private void handleOutcome() {
+        try {
+            succeeded(get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CancellationException) {
+                cancelled();
+            } else {
+                failed(cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(e);
+        }
+    }
+
+    protected abstract void succeeded(T result);
+
+    protected abstract void failed(Throwable error);
+
+    protected abstract void cancelled();
+}
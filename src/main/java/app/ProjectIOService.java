@@ -1,39 +1,460 @@
 package app;
 
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 
+import paintcomponents.ImageElement;
+import paintcomponents.ImagePool;
 import paintcomponents.PaintElement;
 
 public class ProjectIOService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // First two bytes of any Java serialization stream.
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+    // Windows keeps a mapped file locked until the mapping is garbage collected, which
+    // would make saving over a just-opened drawing fail, so files are read into memory there.
+    private static final boolean MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows");
+    // Legacy files hold element classes plus the AWT value types they embed; nothing else may be instantiated.
+    private static final ObjectInputFilter LEGACY_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=20;maxrefs=10000000;"
+                    + "java.lang.*;java.util.*;java.awt.*;java.awt.color.*;java.awt.font.*;java.awt.geom.*;java.text.*;"
+                    + "paintcomponents.*;!*");
+
+    public enum Format {
+        /** Chunked binary format, see {@link PfdFormat}. */
+        BINARY,
+        /** Java serialization of the element list, as written before the binary format. */
+        SERIALIZED
+    }
+
+    /**
+     * Receives progress from a running save or load, on the thread doing the I/O.
+     */
+    public interface ProgressListener {
+        ProgressListener NONE = (done, total) -> true;
+
+        /**
+         * @param done elements written or read so far
+         * @param total elements in the drawing, or 0 while still unknown
+         * @return false to cancel; the operation then throws {@link CancellationException}
+         */
+        boolean progress(int done, int total);
+    }
+
+    /**
+     * Copies the element list so it can be saved on another thread while
+     * editing continues. Must be called on the thread that edits the elements.
+     * Image assets are shared, since they are never modified after import.
+     */
+    public static List<PaintElement> snapshot(List<PaintElement> elements) {
+        List<PaintElement> copy = new ArrayList<>(elements.size());
+        for (PaintElement element : elements) {
+            if (element != null) {
+                copy.add(copyOf(element));
+            }
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Copies one element like {@link #snapshot}.
+     */
+    static PaintElement copyOf(PaintElement element) {
+        PaintElement elementCopy;
+        if (element instanceof ImageElement) {
+            ImageElement image = (ImageElement) element;
+            elementCopy = new ImageElement(image.getAsset(), image.getPosition(), image.getImagePath(),
+                    image.getDisplayName());
+        } else {
+            elementCopy = element.duplicate();
+        }
+        elementCopy.setShadow(element.hasShadow());
+        elementCopy.setDisplayName(element.getDisplayName());
+        return elementCopy;
+    }
 
     public void save(File targetFile, List<PaintElement> elements) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(targetFile))) {
-            oos.writeObject(elements);
+        save(targetFile, elements, Format.BINARY, ProgressListener.NONE);
+    }
+
+    public void save(File targetFile, List<PaintElement> elements, Format format) throws IOException {
+        save(targetFile, elements, format, ProgressListener.NONE);
+    }
+
+    /**
+     * Writes to a temporary file next to the target and moves it into place,
+     * so a failed or cancelled save leaves any existing file untouched.
+     */
+    public void save(File targetFile, List<PaintElement> elements, Format format, ProgressListener listener)
+            throws IOException {
+        writeReplacing(targetFile, elements.size(), listener, out -> {
+            if (format == Format.SERIALIZED) {
+                ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(elements);
+                oos.flush();
+                return Collections.emptyMap();
+            }
+            return PfdWriter.write(out, elements, listener).imageOffsets();
+        });
+    }
+
+    /**
+     * Decides what a binary save of the drawing has to write and copies just
+     * those elements, so the save can run on another thread while editing
+     * goes on. Segments of the file that still hold the same elements, in the
+     * same order and not edited since, are kept; everything else becomes new
+     * segments. Call on the Event Dispatch Thread.
+     */
+    public SavePlan planSave(File targetFile, List<PaintElement> elements, SaveState state) {
+        return planSave(targetFile, elements, state, null);
+    }
+
+    /**
+     * Like {@link #planSave(File, List, SaveState)}, also recording the size of
+     * the canvas the drawing is shown on so the file gets a thumbnail of it.
+     * Only the part of the thumbnail that changed since the previous save is
+     * drawn again, from copies of the elements there; after loading, the
+     * first save copies and draws every element.
+     *
+     * @param canvasSize the canvas size, or null to save without a thumbnail
+     */
+    public SavePlan planSave(File targetFile, List<PaintElement> elements, SaveState state, Dimension canvasSize) {
+        PfdLayout previous = state.getLayout();
+        long created = previous != null && targetFile.getAbsoluteFile().equals(previous.file)
+                ? previous.created : System.currentTimeMillis();
+        if (previous != null && !previous.isCurrent(targetFile)) {
+            previous = null;
+        }
+        Set<PaintElement> edited = state.takeEdited();
+        Map<PaintElement, PfdLayout.Segment> segmentStarts = new IdentityHashMap<>();
+        if (previous != null) {
+            for (PfdLayout.Segment segment : previous.segments) {
+                if (segment.elements.length > 0) {
+                    segmentStarts.put(segment.elements[0], segment);
+                }
+            }
+        }
+
+        List<PfdLayout.Piece> pieces = new ArrayList<>();
+        List<PaintElement> run = new ArrayList<>();
+        int i = 0;
+        while (i < elements.size()) {
+            PaintElement element = elements.get(i);
+            PfdLayout.Segment segment = element != null ? segmentStarts.get(element) : null;
+            if (segment != null && canKeep(segment, elements, i, edited, run.isEmpty())) {
+                PfdLayout.addRun(pieces, run, ProjectIOService::snapshot);
+                run.clear();
+                pieces.add(PfdLayout.Piece.kept(segment));
+                i += segment.elements.length;
+            } else {
+                if (element != null) {
+                    run.add(element);
+                }
+                i++;
+            }
+        }
+        PfdLayout.addRun(pieces, run, ProjectIOService::snapshot);
+        SavePlan plan = new SavePlan(targetFile, previous, pieces, edited, created,
+                canvasSize != null ? new Dimension(canvasSize) : null);
+        if (canvasSize != null && (previous == null || !plan.keepsEverything())) {
+            plan.thumbnail = DrawingThumbnail.plan(previous, pieces, edited, canvasSize);
+        }
+        return plan;
+    }
+
+    private static boolean canKeep(PfdLayout.Segment segment, List<PaintElement> elements, int start,
+                                   Set<PaintElement> edited, boolean afterKept) {
+        // A small segment right after new elements is rewritten with them, so edits do not leave the file in slivers.
+        if (!afterKept && segment.elements.length < PfdLayout.SEGMENT_SIZE / 4) {
+            return false;
+        }
+        if (segment.elements.length > elements.size() - start) {
+            return false;
+        }
+        for (int k = 0; k < segment.elements.length; k++) {
+            PaintElement element = segment.elements[k];
+            if (elements.get(start + k) != element || edited.contains(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Carries out a plan from {@link #planSave}. New segments are appended to
+     * the previous file and its header repointed, unless more than half the
+     * file would then be unused; in that case, or without a previous file,
+     * it is written anew like {@link #save(File, List, Format, ProgressListener)},
+     * copying kept segments over byte for byte. Either way the header is
+     * updated, with a new thumbnail if the plan has a canvas size.
+     */
+    public void save(SavePlan plan, ProgressListener listener) throws IOException {
+        File target = plan.target;
+        PfdLayout previous = plan.previous;
+        if (previous != null) {
+            if (!previous.isCurrent(target)) {
+                throw new IOException(target.getName() + " was changed by another program; save again to overwrite it.");
+            }
+            if (plan.keepsEverything()) {
+                plan.result = previous;
+                plan.appended = true;
+                return;
+            }
+        }
+        DrawingThumbnail thumbnail = plan.thumbnail != null ? DrawingThumbnail.render(plan.thumbnail) : null;
+        DrawingInfo info = new DrawingInfo(plan.getElementCount(),
+                plan.canvasSize != null ? plan.canvasSize.width : 0, plan.canvasSize != null ? plan.canvasSize.height : 0,
+                plan.created, System.currentTimeMillis(), thumbnail != null ? thumbnail.image : null);
+        if (previous != null) {
+            if (!PfdWriter.needsCompaction(previous, plan.pieces, info, listener)) {
+                PfdLayout written;
+                try (FileChannel channel = FileChannel.open(target.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    written = PfdWriter.append(channel, previous, plan.pieces, info, listener);
+                }
+                ImagePool.savedIn(target, written.imageOffsets());
+                plan.result = written.locatedAt(target, thumbnail);
+                plan.appended = true;
+                return;
+            }
+        }
+        PfdLayout[] written = new PfdLayout[1];
+        writeReplacing(target, plan.getElementCount(), listener, out -> {
+            try (FileChannel source = previous != null ? FileChannel.open(target.toPath(), StandardOpenOption.READ) : null) {
+                written[0] = PfdWriter.writeFile(out, plan.pieces, source, previous, info, listener);
+            }
+            return written[0].imageOffsets();
+        });
+        plan.result = written[0].locatedAt(target, thumbnail);
+    }
+
+    private interface FileContents {
+        /**
+         * @return where the written file holds each image's encoded bytes, by hash
+         */
+        Map<String, Long> writeTo(OutputStream out) throws IOException;
+    }
+
+    private static void writeReplacing(File targetFile, int elementCount, ProgressListener listener,
+                                       FileContents contents) throws IOException {
+        File directory = targetFile.getAbsoluteFile().getParentFile();
+        File tempFile = File.createTempFile(targetFile.getName(), ".tmp", directory);
+        boolean moved = false;
+        try {
+            Map<String, Long> imageOffsets;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+                imageOffsets = contents.writeTo(out);
+            }
+            if (!listener.progress(elementCount, elementCount)) {
+                throw new CancellationException("Save cancelled");
+            }
+            // Images of the open drawing may be read from the file being replaced.
+            ImagePool.replaceFile(targetFile, imageOffsets, () -> {
+                try {
+                    Files.move(tempFile.toPath(), targetFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            });
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tempFile.toPath());
+            }
         }
     }
 
     public List<PaintElement> load(File sourceFile) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(sourceFile))) {
-            Object obj = ois.readObject();
-            if (!(obj instanceof List)) {
+        return load(sourceFile, ProgressListener.NONE);
+    }
+
+    public List<PaintElement> load(File sourceFile, ProgressListener listener) throws IOException, ClassNotFoundException {
+        return load(sourceFile, null, listener);
+    }
+
+    /**
+     * Loads a drawing in either format, detected from the first bytes of the file.
+     * Binary files are memory-mapped; images are neither read nor decoded but
+     * read from the file when first drawn, so opening does not depend on how
+     * many pixels the drawing holds.
+     *
+     * @param state receives where the file's segments are, so the next save of
+     *              the drawing writes only what changes; null if not needed
+     */
+    public List<PaintElement> load(File sourceFile, SaveState state, ProgressListener listener)
+            throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the magic number is complete or the file ends.
+            }
+            header.flip();
+            if (header.remaining() == 4 && header.getInt(0) == PfdFormat.MAGIC) {
+                ByteBuffer file = mapOrRead(channel);
+                file.position(4);
+                PfdReader reader = new PfdReader(sourceFile);
+                List<PaintElement> elements = reader.read(file, listener);
+                if (state != null) {
+                    state.setLayout(reader.getLayout().locatedAt(sourceFile));
+                }
+                return elements;
+            }
+            if (header.remaining() < 2 || (header.getShort(0) & 0xFFFF) != SERIALIZATION_MAGIC) {
                 throw new IOException("File does not contain a valid drawing.");
             }
+            channel.position(0);
+            return loadSerialized(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Reads what the header of a drawing file says about it, plus its
+     * thumbnail, without loading the drawing; a few kilobytes at most.
+     *
+     * @return null if the file has no such header: serialized drawings and
+     *         binary ones saved before headers held more than the directory offset
+     */
+    public DrawingInfo readInfo(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return PfdReader.readInfo(channel);
+        }
+    }
+
+    private static ByteBuffer mapOrRead(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Drawing file is too large.");
+        }
+        if (MAP_FILES) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer file = ByteBuffer.allocate((int) size);
+        while (file.hasRemaining() && channel.read(file, file.position()) >= 0) {
+            // Positional reads until the buffer is full or the file turns out shorter.
+        }
+        file.flip();
+        return file;
+    }
+
+    private List<PaintElement> loadSerialized(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        ois.setObjectInputFilter(LEGACY_FILTER);
+        Object obj = ois.readObject();
+        if (!(obj instanceof List)) {
+            throw new IOException("File does not contain a valid drawing.");
+        }
 
-            List<?> loaded = (List<?>) obj;
-            List<PaintElement> loadedElements = new ArrayList<>();
-            for (Object entry : loaded) {
-                if (entry instanceof PaintElement) {
-                    loadedElements.add((PaintElement) entry);
+        List<?> loaded = (List<?>) obj;
+        List<PaintElement> loadedElements = new ArrayList<>();
+        for (Object entry : loaded) {
+            if (entry instanceof PaintElement) {
+                loadedElements.add((PaintElement) entry);
+            }
+        }
+        return loadedElements;
+    }
+
+    /**
+     * What one save of a drawing will write, from {@link #planSave}.
+     */
+    public static final class SavePlan {
+        private final File target;
+        private final PfdLayout previous;
+        private final List<PfdLayout.Piece> pieces;
+        private final Set<PaintElement> edited;
+        private final long created;
+        private final Dimension canvasSize;
+        private DrawingThumbnail.Update thumbnail;
+        private PfdLayout result;
+        private boolean appended;
+
+        SavePlan(File target, PfdLayout previous, List<PfdLayout.Piece> pieces, Set<PaintElement> edited,
+                 long created, Dimension canvasSize) {
+            this.target = target;
+            this.previous = previous;
+            this.pieces = pieces;
+            this.edited = edited;
+            this.created = created;
+            this.canvasSize = canvasSize;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        public int getElementCount() {
+            int count = 0;
+            for (PfdLayout.Piece piece : pieces) {
+                count += piece.size();
+            }
+            return count;
+        }
+
+        /**
+         * @return how many elements the save encodes; the rest are kept from the previous file
+         */
+        public int getWrittenElementCount() {
+            int count = 0;
+            for (PfdLayout.Piece piece : pieces) {
+                if (piece.kept == null) {
+                    count += piece.size();
                 }
             }
-            return loadedElements;
+            return count;
+        }
+
+        /**
+         * @return true if the save appended to the previous file instead of rewriting it
+         */
+        public boolean wasAppended() {
+            return appended;
+        }
+
+        /**
+         * @return true if the previous file already holds exactly these segments
+         */
+        private boolean keepsEverything() {
+            if (pieces.size() != previous.segments.size()) {
+                return false;
+            }
+            for (int i = 0; i < pieces.size(); i++) {
+                if (pieces.get(i).kept != previous.segments.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Set<PaintElement> getEdited() {
+            return edited;
+        }
+
+        PfdLayout getResult() {
+            return result;
         }
     }
 }
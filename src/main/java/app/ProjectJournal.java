@@ -0,0 +1,560 @@
+package app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import paintcomponents.ImageAsset;
+import paintcomponents.ImageElement;
+import paintcomponents.ImagePool;
+import paintcomponents.PaintElement;
+
+/**
+ * Crash recovery for the open drawing: a checkpoint of the whole drawing plus
+ * an append-only journal of every change committed since. The files sit next
+ * to the project as {@code .<name>.recovery} and {@code .<name>.journal}, or
+ * under {@code ~/.pfeasel/recovery} for an untitled drawing, and are deleted
+ * when the drawing is closed normally.
+ *
+ * <pre>
+ * checkpoint := "PFDC", u64 generation, a complete binary .pfd file
+ * journal    := "PFDJ", u16 version, u64 generation, record*
+ * record     := u32 length, u32 crc32, payload[length]
+ * payload    := u8 OP_IMAGE, hash string, encoded image bytes to the end
+ *             | u8 OP_EDIT, varint length, .pfd section, varint run count, run*
+ * run        := varint 0                           next element of the section
+ *             | varint count, varint first index   elements kept from the previous list
+ * </pre>
+ *
+ * An edit record describes the new element list as runs of elements kept
+ * from the previous one plus the new or changed elements, which are encoded
+ * as a {@code .pfd} section naming images by hash; each image's bytes go
+ * into the journal once. A journal only applies to the checkpoint with the
+ * same generation, and replay stops at the first incomplete or damaged record.
+ *
+ * Records are encoded on the Event Dispatch Thread when a change is
+ * committed, since that is where elements may be read; writing, flushing and
+ * checkpointing happen on a single background thread, batched so the
+ * journal is synced at most once per flush interval.
+ */
+final class ProjectJournal {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectJournal.class);
+
+    private static final int CHECKPOINT_MAGIC = PfdFormat.tag("PFDC");
+    private static final int JOURNAL_MAGIC = PfdFormat.tag("PFDJ");
+    private static final int JOURNAL_VERSION = 1;
+    private static final int OP_IMAGE = 1;
+    private static final int OP_EDIT = 2;
+
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int CHECKPOINT_RECORDS = 500;
+    private static final long CHECKPOINT_BYTES = 8L << 20;
+    // Journals open in this process. Some systems drop every lock the process holds on a file when
+    // any channel to it closes, so these are never probed through a second channel.
+    private static final Set<File> OPEN_JOURNALS = ConcurrentHashMap.newKeySet();
+
+    private final File checkpointFile;
+    private final File journalFile;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final ScheduledExecutorService writer;
+
+    // Event Dispatch Thread state: the element list as of the last record.
+    private List<PaintElement> base = Collections.emptyList();
+    private int recordsSinceCheckpoint;
+
+    // Writer thread state.
+    private final PfdOutput pending = new PfdOutput(64 * 1024);
+    private final Set<String> writtenImages = new HashSet<>();
+    private final CRC32 crc = new CRC32();
+    private long generation = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong journalBytes = new AtomicLong();
+    private volatile boolean failed;
+
+    private ProjectJournal(File checkpointFile, File journalFile, FileChannel channel, FileLock lock) {
+        this.checkpointFile = checkpointFile;
+        this.journalFile = journalFile;
+        this.channel = channel;
+        this.lock = lock;
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "project-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts journaling a drawing, beginning with a checkpoint of its current
+     * elements. Existing recovery files at that location are replaced.
+     *
+     * @param projectFile the drawing's file, or null while it is untitled
+     * @return the journal, or null if another instance is journaling the same drawing
+     */
+    static ProjectJournal open(File projectFile, List<PaintElement> document) {
+        File[] files = locate(projectFile);
+        if (!OPEN_JOURNALS.add(files[1])) {
+            logger.warn("Autosave disabled: " + files[1] + " is in use by another window");
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            files[1].getParentFile().mkdirs();
+            channel = FileChannel.open(files[1].toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                logger.warn("Autosave disabled: " + files[1] + " is in use by another instance");
+                OPEN_JOURNALS.remove(files[1]);
+                channel.close();
+                return null;
+            }
+            ProjectJournal journal = new ProjectJournal(files[0], files[1], channel, lock);
+            journal.checkpoint(document);
+            return journal;
+        } catch (IOException e) {
+            logger.error("Autosave disabled: cannot open " + files[1] + ": " + e.getMessage());
+            OPEN_JOURNALS.remove(files[1]);
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    /**
+     * @return true if a previous session left recovery files for this drawing
+     *         and no running instance is using them
+     */
+    static boolean hasRecovery(File projectFile) {
+        File[] files = locate(projectFile);
+        return files[0].isFile() && !isLocked(files[1]);
+    }
+
+    /**
+     * Deletes recovery files left for this drawing, unless they are in use.
+     */
+    static void discardRecovery(File projectFile) {
+        File[] files = locate(projectFile);
+        if (!isLocked(files[1])) {
+            deleteQuietly(files[0]);
+            deleteQuietly(files[1]);
+        }
+    }
+
+    /**
+     * Rebuilds the drawing from its last checkpoint and the journal written after it.
+     */
+    static List<PaintElement> recover(File projectFile) throws IOException {
+        File[] files = locate(projectFile);
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(files[0].toPath()));
+        if (checkpoint.remaining() < 16 || checkpoint.getInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Recovery checkpoint is damaged.");
+        }
+        long generation = checkpoint.getLong();
+        List<PaintElement> elements = readDrawing(checkpoint);
+        Map<String, ImageAsset> images = new HashMap<>();
+        for (PaintElement element : elements) {
+            if (element instanceof ImageElement && ((ImageElement) element).getAsset() != null) {
+                ImageAsset asset = ((ImageElement) element).getAsset();
+                images.put(asset.getHash(), asset);
+            }
+        }
+        if (!files[1].isFile()) {
+            return elements;
+        }
+
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(files[1].toPath()));
+        if (journal.remaining() < 14 || journal.getInt() != JOURNAL_MAGIC
+                || (journal.getShort() & 0xFFFF) != JOURNAL_VERSION || journal.getLong() != generation) {
+            // Written before the checkpoint was taken; everything in it is already there.
+            return elements;
+        }
+        CRC32 crc = new CRC32();
+        int replayed = 0;
+        while (journal.remaining() >= 8) {
+            int length = journal.getInt();
+            int checksum = journal.getInt();
+            if (length < 0 || length > journal.remaining()) {
+                break;
+            }
+            ByteBuffer payload = journal.duplicate();
+            payload.limit(payload.position() + length);
+            journal.position(journal.position() + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                elements = replay(new PfdInput(payload), elements, images);
+            } catch (IOException e) {
+                logger.warn("Stopped recovery at a damaged journal record: " + e.getMessage());
+                break;
+            }
+            replayed++;
+        }
+        logger.info("Recovered drawing from checkpoint and " + replayed + " journal record(s)");
+        return elements;
+    }
+
+    private static List<PaintElement> replay(PfdInput in, List<PaintElement> elements, Map<String, ImageAsset> images)
+            throws IOException {
+        int op = in.readUnsignedByte();
+        if (op == OP_IMAGE) {
+            String hash = in.readString();
+            ImageAsset asset = ImagePool.fromEncodedLazily(in.readBytes(in.remaining()));
+            if (!asset.getHash().equals(hash)) {
+                throw new IOException("image data does not match its hash");
+            }
+            images.put(hash, asset);
+            return elements;
+        }
+        if (op != OP_EDIT) {
+            throw new IOException("unknown record type " + op);
+        }
+        ByteBuffer fragment = ByteBuffer.wrap(in.readBytes(in.readCount()));
+        List<PaintElement> added = new PfdReader(images::get).readSection(fragment, ProjectIOService.ProgressListener.NONE);
+        int runs = in.readCount();
+        List<PaintElement> result = new ArrayList<>(elements.size() + added.size());
+        int nextAdded = 0;
+        for (int i = 0; i < runs; i++) {
+            int count = in.readVarInt();
+            if (count == 0) {
+                if (nextAdded >= added.size()) {
+                    throw new IOException("run refers past the new elements");
+                }
+                result.add(added.get(nextAdded++));
+            } else {
+                int start = in.readVarInt();
+                if (count < 0 || start < 0 || start > elements.size() - count) {
+                    throw new IOException("run refers past the previous elements");
+                }
+                result.addAll(elements.subList(start, start + count));
+            }
+        }
+        return result;
+    }
+
+    private static List<PaintElement> readDrawing(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4 || buffer.getInt() != PfdFormat.MAGIC) {
+            throw new IOException("Recovery data does not contain a drawing.");
+        }
+        return new PfdReader().read(buffer, ProjectIOService.ProgressListener.NONE);
+    }
+
+    /**
+     * Records the document as it is after a committed change. Call on the
+     * Event Dispatch Thread after every undoable action, undo and redo.
+     *
+     * @param changed elements modified in place, which are written out again;
+     *                added, removed and reordered elements are found by comparing
+     *                with the previous record
+     */
+    void record(List<PaintElement> document, Collection<PaintElement> changed) {
+        if (failed) {
+            return;
+        }
+        Map<PaintElement, Integer> baseIndex = new IdentityHashMap<>(base.size() * 2);
+        for (int i = 0; i < base.size(); i++) {
+            baseIndex.put(base.get(i), i);
+        }
+        Set<PaintElement> changedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        changedSet.addAll(changed);
+
+        List<PaintElement> added = new ArrayList<>();
+        PfdOutput runs = new PfdOutput(64);
+        int runCount = 0;
+        int runStart = 0;
+        int runLength = 0;
+        boolean unchanged = document.size() == base.size();
+        for (int i = 0; i < document.size(); i++) {
+            PaintElement element = document.get(i);
+            Integer previous = changedSet.contains(element) ? null : baseIndex.get(element);
+            if (previous != null && runLength > 0 && previous == runStart + runLength) {
+                runLength++;
+                unchanged &= previous == i;
+                continue;
+            }
+            if (runLength > 0) {
+                runs.writeVarInt(runLength);
+                runs.writeVarInt(runStart);
+                runCount++;
+                runLength = 0;
+            }
+            if (previous == null) {
+                added.add(element);
+                runs.writeVarInt(0);
+                runCount++;
+                unchanged = false;
+            } else {
+                runStart = previous;
+                runLength = 1;
+                unchanged &= previous == i;
+            }
+        }
+        if (runLength > 0) {
+            runs.writeVarInt(runLength);
+            runs.writeVarInt(runStart);
+            runCount++;
+        }
+        if (unchanged) {
+            return;
+        }
+
+        PfdWriter fragmentWriter = new PfdWriter();
+        PfdOutput fragment;
+        try {
+            fragment = fragmentWriter.writeSection(added);
+        } catch (IllegalArgumentException e) {
+            // Keep editing working; only crash recovery is lost from here on.
+            failed = true;
+            logger.error("Autosave stopped: " + e.getMessage(), e);
+            return;
+        }
+        PfdOutput payload = new PfdOutput(fragment.size() + runs.size() + 16);
+        payload.writeByte(OP_EDIT);
+        payload.writeVarInt(fragment.size());
+        payload.writeBytes(fragment.asByteBuffer().array(), 0, fragment.size());
+        payload.writeVarInt(runCount);
+        payload.writeBytes(runs.asByteBuffer().array(), 0, runs.size());
+        List<ImageAsset> images = new ArrayList<>(fragmentWriter.getImages());
+
+        base = new ArrayList<>(document);
+        recordsSinceCheckpoint++;
+        submit(() -> {
+            for (ImageAsset asset : images) {
+                if (writtenImages.add(asset.getHash())) {
+                    PfdOutput image = new PfdOutput(asset.getEncodedLength() + 80);
+                    image.writeByte(OP_IMAGE);
+                    image.writeString(asset.getHash());
+                    asset.writeEncodedTo(image);
+                    append(image);
+                }
+            }
+            append(payload);
+        });
+    }
+
+    /**
+     * @return true once the journal has grown enough that a new checkpoint should be taken
+     */
+    boolean wantsCheckpoint() {
+        return recordsSinceCheckpoint >= CHECKPOINT_RECORDS || journalBytes.get() >= CHECKPOINT_BYTES;
+    }
+
+    /**
+     * Copies the document and writes it out as the new checkpoint, after which
+     * the journal starts over. Call on the Event Dispatch Thread.
+     */
+    void checkpoint(List<PaintElement> document) {
+        if (failed) {
+            return;
+        }
+        List<PaintElement> snapshot = ProjectIOService.snapshot(document);
+        base = new ArrayList<>(document);
+        recordsSinceCheckpoint = 0;
+        submit(() -> writeCheckpoint(snapshot));
+    }
+
+    /**
+     * Writes out what is pending and stops the journal.
+     *
+     * @param discard delete the recovery files, as when the drawing is closed normally
+     */
+    void close(boolean discard) {
+        writer.execute(() -> {
+            if (!failed && !discard) {
+                flush();
+            }
+            try {
+                lock.release();
+            } catch (IOException e) {
+                logger.warn("Failed to unlock " + journalFile + ": " + e.getMessage());
+            }
+            closeQuietly(channel);
+            if (discard) {
+                deleteQuietly(checkpointFile);
+                deleteQuietly(journalFile);
+            }
+            OPEN_JOURNALS.remove(journalFile);
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface JournalTask {
+        void run() throws IOException;
+    }
+
+    private void submit(JournalTask task) {
+        writer.execute(() -> {
+            if (failed) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                // Keep editing working; only crash recovery is lost from here on.
+                failed = true;
+                logger.error("Autosave stopped: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private void append(PfdOutput payload) {
+        ByteBuffer bytes = payload.asByteBuffer();
+        crc.reset();
+        crc.update(bytes.duplicate());
+        pending.writeInt(payload.size());
+        pending.writeInt((int) crc.getValue());
+        pending.writeBytes(bytes.array(), 0, payload.size());
+    }
+
+    private void flush() {
+        if (failed || pending.size() == 0) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = pending.asByteBuffer();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            journalBytes.addAndGet(pending.size());
+            pending.reset();
+        } catch (IOException e) {
+            failed = true;
+            logger.error("Autosave stopped: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeCheckpoint(List<PaintElement> snapshot) throws IOException {
+        // Whatever is pending belongs to the previous checkpoint, which this one replaces.
+        pending.reset();
+        long nextGeneration = generation + 1;
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(nextGeneration);
+            PfdWriter.write(out, snapshot, ProjectIOService.ProgressListener.NONE);
+            out.flush();
+            file.getFD().sync();
+        }
+        try {
+            Files.move(temp.toPath(), checkpointFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(14);
+        header.putInt(JOURNAL_MAGIC).putShort((short) JOURNAL_VERSION).putLong(nextGeneration).flip();
+        channel.write(header, 0);
+        channel.position(header.limit());
+        channel.force(false);
+        generation = nextGeneration;
+        journalBytes.set(0);
+        writtenImages.clear();
+        for (PaintElement element : snapshot) {
+            if (element instanceof ImageElement && ((ImageElement) element).getAsset() != null) {
+                writtenImages.add(((ImageElement) element).getAsset().getHash());
+            }
+        }
+    }
+
+    /**
+     * @return the checkpoint and journal files for a drawing
+     */
+    private static File[] locate(File projectFile) {
+        File directory;
+        String name;
+        if (projectFile != null) {
+            File absolute = projectFile.getAbsoluteFile();
+            directory = absolute.getParentFile();
+            name = "." + absolute.getName();
+        } else {
+            directory = new File(System.getProperty("user.home"), ".pfeasel" + File.separator + "recovery");
+            name = "untitled";
+        }
+        return new File[] {new File(directory, name + ".recovery"), new File(directory, name + ".journal")};
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLocked(File journalFile) {
+        if (OPEN_JOURNALS.contains(journalFile)) {
+            return true;
+        }
+        if (!journalFile.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = tryLock(channel);
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("Failed to delete " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package app;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import paintcomponents.PaintElement;
+
+/**
+ * What the last save or open of the drawing left on disk, plus the elements
+ * edited in place since then, so {@link ProjectIOService#planSave} can keep
+ * the rest of the file as it is. One per open drawing; use it on the Event
+ * Dispatch Thread.
+ */
+public final class SaveState {
+    private PfdLayout layout;
+    private final Set<PaintElement> edited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Marks elements as changed in place so the next save writes them again.
+     * Added, removed and reordered elements need no marking; they are found
+     * by comparing the drawing with the file.
+     */
+    public void markEdited(Collection<? extends PaintElement> elements) {
+        edited.addAll(elements);
+    }
+
+    /**
+     * Records a finished save as the new state of the file.
+     */
+    public void saved(ProjectIOService.SavePlan plan) {
+        layout = plan.getResult();
+    }
+
+    /**
+     * Restores the edits a failed or cancelled save would have written.
+     */
+    public void saveFailed(ProjectIOService.SavePlan plan) {
+        edited.addAll(plan.getEdited());
+    }
+
+    PfdLayout getLayout() {
+        return layout;
+    }
+
+    void setLayout(PfdLayout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * @return the elements edited since the last call, which the caller now has to write
+     */
+    Set<PaintElement> takeEdited() {
+        Set<PaintElement> taken = Collections.newSetFromMap(new IdentityHashMap<>(edited.size() * 2));
+        taken.addAll(edited);
+        edited.clear();
+        return taken;
+    }
+}
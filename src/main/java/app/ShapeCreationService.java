@@ -4,9 +4,6 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
 import java.util.List;
 
 import paintcomponents.BezierElement;
@@ -14,6 +11,7 @@ import paintcomponents.CircleElement;
 import paintcomponents.FreehandElement;
 import paintcomponents.LineElement;
 import paintcomponents.PaintElement;
+import paintcomponents.PointBuffer;
 import paintcomponents.PolygonElement;
 import paintcomponents.RectangleElement;
 import paintcomponents.RoundRectangleElement;
@@ -115,11 +113,22 @@ public class ShapeCreationService {
                 toolboxFrame.isStrokeEnabled());
     }
 
-    public FreehandElement createFreehandElement(List<Point> points, ToolboxFrame toolboxFrame) {
+    /**
+     * Builds the freehand element for a finished stroke from the points the
+     * simplifier kept during capture. Curve fidelities then fit those points
+     * with cubic segments, which bounds the error against the simplified stroke
+     * rather than the raw input.
+     */
+    public FreehandElement createFreehandElement(StrokeSimplifier simplifier, ToolboxFrame toolboxFrame) {
         Color strokeColor = toolboxFrame.isStrokeEnabled() ? toolboxFrame.getStrokeColor() : Color.BLACK;
         float strokeWidth = (float) toolboxFrame.getCurrentStrokeWidth();
-        List<Point> simplified = douglasPeucker(points, 2.0);
-        return new FreehandElement(simplified, strokeColor, strokeWidth);
+        ToolboxFrame.StrokeFidelity fidelity = toolboxFrame.getStrokeFidelity();
+        PointBuffer polyline = simplifier.toPointBuffer();
+        if (fidelity.isCurveFitting() && polyline.size() >= 3) {
+            PointBuffer curve = CurveFitter.fit(polyline, fidelity.getTolerance());
+            return new FreehandElement(curve, strokeColor, strokeWidth, true);
+        }
+        return new FreehandElement(polyline, strokeColor, strokeWidth);
     }
 
     public BezierElement createBezierElement(List<Point> points, ToolboxFrame toolboxFrame) {
@@ -127,47 +136,4 @@ public class ShapeCreationService {
         float strokeWidth = (float) toolboxFrame.getCurrentStrokeWidth();
         return new BezierElement(points, strokeColor, strokeWidth);
     }
-
-    /**
-     * Iterative Douglas-Peucker polyline simplification.
-     * Removes points that deviate less than {@code epsilon} pixels from the
-     * straight line between their neighbours.
-     */
-    private static List<Point> douglasPeucker(List<Point> points, double epsilon) {
-        if (points.size() < 3) return new ArrayList<>(points);
-        boolean[] keep = new boolean[points.size()];
-        keep[0] = true;
-        keep[points.size() - 1] = true;
-        Deque<int[]> stack = new ArrayDeque<>();
-        stack.push(new int[]{0, points.size() - 1});
-        while (!stack.isEmpty()) {
-            int[] range = stack.pop();
-            int lo = range[0], hi = range[1];
-            double maxDist = 0;
-            int maxIdx = lo;
-            Point a = points.get(lo);
-            Point b = points.get(hi);
-            for (int i = lo + 1; i < hi; i++) {
-                double d = pointToLineDistance(points.get(i), a, b);
-                if (d > maxDist) { maxDist = d; maxIdx = i; }
-            }
-            if (maxDist > epsilon) {
-                keep[maxIdx] = true;
-                if (maxIdx - lo > 1) stack.push(new int[]{lo, maxIdx});
-                if (hi - maxIdx > 1) stack.push(new int[]{maxIdx, hi});
-            }
-        }
-        List<Point> result = new ArrayList<>();
-        for (int i = 0; i < points.size(); i++) {
-            if (keep[i]) result.add(points.get(i));
-        }
-        return result;
-    }
-
-    private static double pointToLineDistance(Point p, Point a, Point b) {
-        double dx = b.x - a.x, dy = b.y - a.y;
-        if (dx == 0 && dy == 0) return p.distance(a);
-        double t = ((p.x - a.x) * dx + (p.y - a.y) * dy) / (dx * dx + dy * dy);
-        return Math.hypot(p.x - (a.x + t * dx), p.y - (a.y + t * dy));
-    }
 }
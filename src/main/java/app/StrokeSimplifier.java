@@ -0,0 +1,76 @@
+package app;
+
+import java.awt.geom.Line2D;
+
+import paintcomponents.PointBuffer;
+
+/**
+ * Online polyline decimation for freehand capture. Points are fed in as they
+ * arrive and only those needed to stay within {@code tolerance} pixels of the
+ * raw stroke are kept, so releasing the mouse does not have to simplify the
+ * whole stroke in one go.
+ *
+ * Every raw point between two kept points lies within the tolerance of the
+ * segment joining them, the same bound Douglas-Peucker gives.
+ */
+public class StrokeSimplifier {
+    // Caps the per-point check; a long straight run is cut into segments of this many points.
+    private static final int MAX_PENDING = 64;
+
+    private final double toleranceSq;
+    private final PointBuffer kept = new PointBuffer(64);
+    private final PointBuffer pending = new PointBuffer(MAX_PENDING);
+
+    /**
+     * @param tolerance maximum distance in pixels between the raw and simplified
+     *                  stroke; 0 keeps every point
+     */
+    public StrokeSimplifier(double tolerance) {
+        this.toleranceSq = tolerance * tolerance;
+    }
+
+    public void add(int x, int y) {
+        if (kept.isEmpty() || toleranceSq <= 0) {
+            kept.add(x, y);
+            return;
+        }
+        if (!pending.isEmpty() && (pending.size() >= MAX_PENDING || !coversPending(x, y))) {
+            // The segment to (x, y) would stray too far; keep the last point that still fit.
+            int last = pending.size() - 1;
+            kept.add(pending.getX(last), pending.getY(last));
+            pending.clear();
+        }
+        pending.add(x, y);
+    }
+
+    /**
+     * @return the number of points the simplified stroke has so far
+     */
+    public int size() {
+        return kept.size() + (pending.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * @return the simplified stroke, ending at the last point added
+     */
+    public PointBuffer toPointBuffer() {
+        PointBuffer result = kept.copy();
+        if (!pending.isEmpty()) {
+            int last = pending.size() - 1;
+            result.add(pending.getX(last), pending.getY(last));
+        }
+        return result;
+    }
+
+    private boolean coversPending(int x, int y) {
+        int anchor = kept.size() - 1;
+        int ax = kept.getX(anchor);
+        int ay = kept.getY(anchor);
+        for (int i = 0; i < pending.size(); i++) {
+            if (Line2D.ptSegDistSq(ax, ay, x, y, pending.getX(i), pending.getY(i)) > toleranceSq) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
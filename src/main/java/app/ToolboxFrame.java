@@ -26,6 +26,42 @@ public class ToolboxFrame extends JFrame {
         SELECT, TEXT, RECTANGLE, ROUND_RECTANGLE, CIRCLE, LINE, POLYGON, FREEHAND, BEZIER, IMAGE_URL, IMAGE_LOCAL, MOVE
     }
 
+    /**
+     * How closely freehand strokes follow the pointer, traded against their point count.
+     */
+    public enum StrokeFidelity {
+        EXACT("Exact", 0.0, false),
+        PRECISE("Precise", 1.0, false),
+        BALANCED("Balanced", 2.0, false),
+        CURVES("Curves", 2.0, true),
+        SMOOTH_CURVES("Smooth curves", 4.0, true);
+
+        private final String label;
+        private final double tolerance;
+        private final boolean curveFitting;
+
+        StrokeFidelity(String label, double tolerance, boolean curveFitting) {
+            this.label = label;
+            this.tolerance = tolerance;
+            this.curveFitting = curveFitting;
+        }
+
+        /** Maximum distance in pixels between the drawn and stored stroke. */
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        /** Whether the stroke is stored as fitted cubic curves instead of a polyline. */
+        public boolean isCurveFitting() {
+            return curveFitting;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
     private ToolType selectedTool = ToolType.SELECT; // Default tool changed to SELECT
     private Color fillColor = Color.BLACK;
     private Color strokeColor = Color.BLACK;
@@ -52,6 +88,7 @@ public class ToolboxFrame extends JFrame {
     private boolean isShadowEnabled = false; // Added for shadow toggle
     private int arcWidth = 20; // Retained for storing value
     private int arcHeight = 20; // Retained for storing value
+    private StrokeFidelity strokeFidelity = StrokeFidelity.BALANCED;
 
     private Map<ToolType, JToggleButton> toolButtons = new HashMap<>(); // Changed JButton to JToggleButton
     private Main mainFrame;
@@ -195,6 +232,15 @@ public class ToolboxFrame extends JFrame {
             }
         });
         arcButtonPanel.add(arcOptionsButton);
+
+        JComboBox<StrokeFidelity> fidelityCombo = new JComboBox<>(StrokeFidelity.values());
+        fidelityCombo.setSelectedItem(strokeFidelity);
+        fidelityCombo.setToolTipText("Freehand stroke fidelity");
+        fidelityCombo.addActionListener(e -> {
+            strokeFidelity = (StrokeFidelity) fidelityCombo.getSelectedItem();
+            logger.info("Stroke fidelity: " + strokeFidelity);
+        });
+        arcButtonPanel.add(fidelityCombo);
         controlsPanel.add(arcButtonPanel, gbc);
 
         // Text input
@@ -593,6 +639,7 @@ public class ToolboxFrame extends JFrame {
                 JOptionPane.YES_NO_OPTION
             );
             if (confirm == JOptionPane.YES_OPTION) {
+                mainFrame.closeJournal();
                 System.exit(0);
             }
         });
@@ -678,6 +725,14 @@ public class ToolboxFrame extends JFrame {
         viewMenu.add(snapToGridMenuItem);
         viewMenu.addSeparator();
 
+        JCheckBoxMenuItem downscaleImagesMenuItem = new JCheckBoxMenuItem("Downscale Large Images", mainFrame == null || mainFrame.isDownscaleLargeImages());
+        downscaleImagesMenuItem.setToolTipText("Decode imported images much larger than the canvas at reduced resolution");
+        downscaleImagesMenuItem.addActionListener(e -> {
+            if (mainFrame != null) mainFrame.setDownscaleLargeImages(downscaleImagesMenuItem.isSelected());
+        });
+        viewMenu.add(downscaleImagesMenuItem);
+        viewMenu.addSeparator();
+
         JMenu antiAliasingMenu = new JMenu("Anti-aliasing");
         ButtonGroup antiAliasingGroup = new ButtonGroup();
         boolean antiAliasingCurrentlyOn = mainFrame != null && mainFrame.isAntiAliasingActive();
@@ -697,6 +752,15 @@ public class ToolboxFrame extends JFrame {
         antiAliasingMenu.add(antiAliasingOnMenuItem);
         viewMenu.add(antiAliasingMenu);
 
+        JCheckBoxMenuItem renderStatsMenuItem = new JCheckBoxMenuItem("Show Render Stats", mainFrame != null && mainFrame.isDebugLogVisible());
+        renderStatsMenuItem.addActionListener(e -> {
+            if (mainFrame != null) {
+                mainFrame.setDebugLogVisible(renderStatsMenuItem.isSelected());
+                mainFrame.repaintDrawingPanel();
+            }
+        });
+        viewMenu.add(renderStatsMenuItem);
+
         // Theme Switcher
         JMenu themeMenu = new JMenu("Theme");
         ButtonGroup themeGroup = new ButtonGroup();
@@ -1058,6 +1122,10 @@ public class ToolboxFrame extends JFrame {
         return arcWidth;
     }
 
+    public StrokeFidelity getStrokeFidelity() {
+        return strokeFidelity;
+    }
+
     public int getArcHeight() { // Added getter
         return arcHeight;
     }
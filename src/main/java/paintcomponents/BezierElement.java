@@ -6,93 +6,179 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.GeneralPath;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 
 public class BezierElement implements PaintElement {
-    private List<Point> points;
+    private static final long serialVersionUID = -1839663903799219869L;
+
+    // Same persisted layout as FreehandElement: packed "coords", legacy "points" list.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("points", List.class),
+        new ObjectStreamField("coords", int[].class),
+        new ObjectStreamField("strokeColor", Color.class),
+        new ObjectStreamField("strokeWidth", float.class),
+        new ObjectStreamField("hasShadow", boolean.class),
+        new ObjectStreamField("displayName", String.class)
+    };
+
+    private PointBuffer points;
     private Color strokeColor;
     private float strokeWidth;
     private boolean hasShadow;
     private String displayName;
 
+    // Derived geometry in coordinates relative to the buffer origin, so moves keep it valid.
+    private transient GeneralPath cachedPath;
+    private transient Rectangle cachedBounds;
+    private transient float[] cachedOutline;
+
     public BezierElement(List<Point> points, Color strokeColor, float strokeWidth) {
-        this.points = new ArrayList<>(points);
+        this(PointBuffer.fromPoints(points), strokeColor, strokeWidth);
+    }
+
+    public BezierElement(PointBuffer points, Color strokeColor, float strokeWidth) {
+        this.points = points.copy();
         this.strokeColor = strokeColor;
         this.strokeWidth = strokeWidth;
         this.hasShadow = false;
     }
 
     /**
-     * Builds a smooth Catmull-Rom spline path through all stored anchor points,
-     * offset by (dx, dy).
+     * Builds a smooth Catmull-Rom spline path through all stored anchor points.
      */
-    private GeneralPath buildPath(int dx, int dy) {
+    private GeneralPath buildPath() {
         GeneralPath path = new GeneralPath();
         if (points.size() < 2) return path;
         int n = points.size();
-        Point first = points.get(0);
-        path.moveTo(first.x + dx, first.y + dy);
+        path.moveTo(points.getLocalX(0), points.getLocalY(0));
         for (int i = 0; i < n - 1; i++) {
-            Point p0 = points.get(Math.max(0, i - 1));
-            Point p1 = points.get(i);
-            Point p2 = points.get(i + 1);
-            Point p3 = points.get(Math.min(n - 1, i + 2));
+            int i0 = Math.max(0, i - 1);
+            int i3 = Math.min(n - 1, i + 2);
+            int p1x = points.getLocalX(i), p1y = points.getLocalY(i);
+            int p2x = points.getLocalX(i + 1), p2y = points.getLocalY(i + 1);
             // Catmull-Rom to cubic Bezier control point conversion
-            double cp1x = p1.x + (p2.x - p0.x) / 6.0;
-            double cp1y = p1.y + (p2.y - p0.y) / 6.0;
-            double cp2x = p2.x - (p3.x - p1.x) / 6.0;
-            double cp2y = p2.y - (p3.y - p1.y) / 6.0;
-            path.curveTo(cp1x + dx, cp1y + dy, cp2x + dx, cp2y + dy, p2.x + dx, p2.y + dy);
+            double cp1x = p1x + (p2x - points.getLocalX(i0)) / 6.0;
+            double cp1y = p1y + (p2y - points.getLocalY(i0)) / 6.0;
+            double cp2x = p2x - (points.getLocalX(i3) - p1x) / 6.0;
+            double cp2y = p2y - (points.getLocalY(i3) - p1y) / 6.0;
+            path.curveTo(cp1x, cp1y, cp2x, cp2y, p2x, p2y);
         }
         return path;
     }
 
+    private GeneralPath getPath() {
+        if (cachedPath == null) {
+            cachedPath = buildPath();
+        }
+        return cachedPath;
+    }
+
+    /** Flattened copy of the spline used for hit testing. */
+    private float[] getOutline() {
+        if (cachedOutline == null) {
+            cachedOutline = PathGeometry.flatten(getPath());
+        }
+        return cachedOutline;
+    }
+
     @Override
     public void draw(Graphics2D g2d) {
         if (strokeColor == null || strokeWidth <= 0 || points.size() < 2) return;
         g2d.setColor(strokeColor);
-        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2d.draw(buildPath(0, 0));
+        g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawPathAt(g2d, points.getOriginX(), points.getOriginY());
     }
 
     @Override
     public void drawShadow(Graphics2D g2d, Color shadowColor, int shadowXOffset, int shadowYOffset) {
         if (!hasShadow || shadowColor == null || strokeWidth <= 0 || points.size() < 2) return;
         g2d.setColor(shadowColor);
-        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2d.draw(buildPath(shadowXOffset, shadowYOffset));
+        g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawPathAt(g2d, points.getOriginX() + shadowXOffset, points.getOriginY() + shadowYOffset);
+    }
+
+    private void drawPathAt(Graphics2D g2d, int tx, int ty) {
+        g2d.translate(tx, ty);
+        g2d.draw(getPath());
+        g2d.translate(-tx, -ty);
     }
 
     @Override
     public boolean contains(Point p) {
         if (points.size() < 2) return false;
-        GeneralPath path = buildPath(0, 0);
-        float hitWidth = Math.max(strokeWidth + 6, 8);
-        return new BasicStroke(hitWidth).createStrokedShape(path).contains(p);
+        double tolerance = Math.max(strokeWidth + 6, 8) / 2.0;
+        Rectangle b = getCachedBounds();
+        if (p.x < b.x - tolerance || p.y < b.y - tolerance
+                || p.x > b.x + b.width + tolerance || p.y > b.y + b.height + tolerance) {
+            return false;
+        }
+        return PathGeometry.isNearPolyline(getOutline(),
+                p.x - points.getOriginX(), p.y - points.getOriginY(), tolerance);
     }
 
     @Override
     public void setPosition(int x, int y) {
         if (points.isEmpty()) return;
-        Rectangle b = getBounds();
+        Rectangle b = getCachedBounds();
         int dx = x - b.x;
         int dy = y - b.y;
-        List<Point> translated = new ArrayList<>();
-        for (Point pt : points) translated.add(new Point(pt.x + dx, pt.y + dy));
-        points = translated;
+        points.translate(dx, dy);
+        b.translate(dx, dy);
     }
 
     @Override
     public Point getPosition() {
-        return new Point(getBounds().x, getBounds().y);
+        Rectangle b = getCachedBounds();
+        return new Point(b.x, b.y);
+    }
+
+    @Override
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public Color getStrokeColor() {
+        return strokeColor;
+    }
+
+    /**
+     * @return a copy of the points, in absolute coordinates
+     */
+    public PointBuffer getPoints() {
+        return points.copy();
+    }
+
+    public int getPointCount() {
+        return points.size();
     }
 
     @Override
     public Rectangle getBounds() {
-        if (points.isEmpty()) return new Rectangle(0, 0, 0, 0);
-        if (points.size() == 1) return new Rectangle(points.get(0).x, points.get(0).y, 0, 0);
-        return buildPath(0, 0).getBounds();
+        return new Rectangle(getCachedBounds());
+    }
+
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        into.setBounds(getCachedBounds());
+        return into;
+    }
+
+    private Rectangle getCachedBounds() {
+        if (cachedBounds == null) {
+            if (points.isEmpty()) {
+                cachedBounds = new Rectangle(0, 0, 0, 0);
+            } else if (points.size() == 1) {
+                cachedBounds = new Rectangle(points.getX(0), points.getY(0), 0, 0);
+            } else {
+                cachedBounds = getPath().getBounds();
+                cachedBounds.translate(points.getOriginX(), points.getOriginY());
+            }
+        }
+        return cachedBounds;
     }
 
     @Override
@@ -117,4 +203,30 @@ public class BezierElement implements PaintElement {
         copy.setDisplayName(displayName);
         return copy;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("coords", points.toPackedArray());
+        fields.put("strokeColor", strokeColor);
+        fields.put("strokeWidth", strokeWidth);
+        fields.put("hasShadow", hasShadow);
+        fields.put("displayName", displayName);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        int[] coords = (int[]) fields.get("coords", null);
+        if (coords != null) {
+            points = PointBuffer.fromPackedArray(coords);
+        } else {
+            List<Point> legacyPoints = (List<Point>) fields.get("points", null);
+            points = legacyPoints != null ? PointBuffer.fromPoints(legacyPoints) : new PointBuffer();
+        }
+        strokeColor = (Color) fields.get("strokeColor", null);
+        strokeWidth = fields.get("strokeWidth", 0f);
+        hasShadow = fields.get("hasShadow", false);
+        displayName = (String) fields.get("displayName", null);
+    }
 }
@@ -2,11 +2,12 @@ package paintcomponents;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.BasicStroke;
 import java.awt.Point;
 import java.awt.Rectangle;
 
 public class CircleElement implements PaintElement {
+    private static final long serialVersionUID = 2032785224516516721L;
+
     private int x, y, width, height; // x, y are top-left of bounding box
     private Color fillColor;
     private Color strokeColor;
@@ -39,7 +40,7 @@ public class CircleElement implements PaintElement {
         }
         if (strokeEnabled && strokeColor != null && strokeWidth > 0) {
             g2d.setColor(strokeColor);
-            g2d.setStroke(new BasicStroke(strokeWidth));
+            g2d.setStroke(StrokeCache.get(strokeWidth));
             g2d.drawOval(x, y, width, height);
         }
     }
@@ -103,11 +104,38 @@ public class CircleElement implements PaintElement {
         return newCircle;
     }
 
+    @Override
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public Color getFillColor() {
+        return fillColor;
+    }
+
+    public Color getStrokeColor() {
+        return strokeColor;
+    }
+
+    public boolean isFillEnabled() {
+        return fillEnabled;
+    }
+
+    public boolean isStrokeEnabled() {
+        return strokeEnabled;
+    }
+
     @Override
     public Rectangle getBounds() {
         return new Rectangle(x, y, width, height);
     }
 
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        into.setBounds(x, y, width, height);
+        return into;
+    }
+
     @Override
     public boolean isResizable() {
         return true;
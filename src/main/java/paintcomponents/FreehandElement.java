@@ -6,91 +6,232 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.GeneralPath;
-import java.awt.geom.Line2D;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.List;
 
 public class FreehandElement implements PaintElement {
-    private List<Point> points;
+    private static final long serialVersionUID = 3333466756723724187L;
+
+    /*
+     * Vertices are kept in a PointBuffer and written as a packed "coords" array.
+     * Files saved before that change hold a List<Point> under "points", which
+     * readObject still accepts.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("points", List.class),
+        new ObjectStreamField("coords", int[].class),
+        new ObjectStreamField("cubic", boolean.class),
+        new ObjectStreamField("strokeColor", Color.class),
+        new ObjectStreamField("strokeWidth", float.class),
+        new ObjectStreamField("hasShadow", boolean.class),
+        new ObjectStreamField("displayName", String.class)
+    };
+
+    private PointBuffer points;
+    // When set, points holds a start point followed by (control 1, control 2, end) triples.
+    private boolean cubic;
     private Color strokeColor;
     private float strokeWidth;
     private boolean hasShadow;
     private String displayName;
 
+    // Derived geometry in coordinates relative to the buffer origin, so moves keep it valid.
+    private transient GeneralPath cachedPath;
+    private transient Rectangle cachedBounds;
+    private transient float[] cachedOutline;
+
     public FreehandElement(List<Point> points, Color strokeColor, float strokeWidth) {
-        this.points = new ArrayList<>(points);
+        this(PointBuffer.fromPoints(points), strokeColor, strokeWidth);
+    }
+
+    public FreehandElement(PointBuffer points, Color strokeColor, float strokeWidth) {
+        this(points, strokeColor, strokeWidth, false);
+    }
+
+    /**
+     * @param cubic true when {@code points} holds fitted cubic segments, as
+     *              produced by {@code app.CurveFitter}, rather than a polyline
+     */
+    public FreehandElement(PointBuffer points, Color strokeColor, float strokeWidth, boolean cubic) {
+        this.points = points.copy();
+        this.cubic = cubic;
         this.strokeColor = strokeColor;
         this.strokeWidth = strokeWidth;
         this.hasShadow = false;
     }
 
-    private GeneralPath buildPath(int dx, int dy) {
-        GeneralPath path = new GeneralPath();
+    private GeneralPath buildPath() {
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, Math.max(points.size(), 2));
         if (points.size() < 2) return path;
-        Point first = points.get(0);
-        path.moveTo(first.x + dx, first.y + dy);
+        path.moveTo(points.getLocalX(0), points.getLocalY(0));
+        if (cubic) {
+            for (int i = 1; i + 2 < points.size(); i += 3) {
+                path.curveTo(points.getLocalX(i), points.getLocalY(i),
+                        points.getLocalX(i + 1), points.getLocalY(i + 1),
+                        points.getLocalX(i + 2), points.getLocalY(i + 2));
+            }
+            return path;
+        }
         for (int i = 1; i < points.size(); i++) {
-            Point p = points.get(i);
-            path.lineTo(p.x + dx, p.y + dy);
+            path.lineTo(points.getLocalX(i), points.getLocalY(i));
         }
         return path;
     }
 
+    private GeneralPath getPath() {
+        if (cachedPath == null) {
+            cachedPath = buildPath();
+        }
+        return cachedPath;
+    }
+
+    /** A polyline stroke is its own hit-test outline; fitted curves are flattened first. */
+    private float[] getOutline() {
+        if (cachedOutline != null) {
+            return cachedOutline;
+        }
+        if (cubic) {
+            cachedOutline = PathGeometry.flatten(getPath());
+        } else {
+            float[] xy = new float[points.size() * 2];
+            for (int i = 0; i < points.size(); i++) {
+                xy[2 * i] = points.getLocalX(i);
+                xy[2 * i + 1] = points.getLocalY(i);
+            }
+            cachedOutline = xy;
+        }
+        return cachedOutline;
+    }
+
     @Override
     public void draw(Graphics2D g2d) {
         if (strokeColor == null || strokeWidth <= 0 || points.size() < 2) return;
         g2d.setColor(strokeColor);
-        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2d.draw(buildPath(0, 0));
+        g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawPathAt(g2d, points.getOriginX(), points.getOriginY());
     }
 
     @Override
     public void drawShadow(Graphics2D g2d, Color shadowColor, int shadowXOffset, int shadowYOffset) {
         if (!hasShadow || shadowColor == null || strokeWidth <= 0 || points.size() < 2) return;
         g2d.setColor(shadowColor);
-        g2d.setStroke(new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        g2d.draw(buildPath(shadowXOffset, shadowYOffset));
+        g2d.setStroke(StrokeCache.get(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawPathAt(g2d, points.getOriginX() + shadowXOffset, points.getOriginY() + shadowYOffset);
+    }
+
+    private void drawPathAt(Graphics2D g2d, int tx, int ty) {
+        g2d.translate(tx, ty);
+        g2d.draw(getPath());
+        g2d.translate(-tx, -ty);
     }
 
     @Override
     public boolean contains(Point p) {
-        for (int i = 1; i < points.size(); i++) {
-            Point a = points.get(i - 1);
-            Point b = points.get(i);
-            Line2D seg = new Line2D.Double(a.x, a.y, b.x, b.y);
-            if (seg.ptSegDist(p) <= strokeWidth / 2.0 + 3) return true;
+        if (points.size() < 2) return false;
+        double tolerance = strokeWidth / 2.0 + 3;
+        Rectangle b = getCachedBounds();
+        if (p.x < b.x - tolerance || p.y < b.y - tolerance
+                || p.x > b.x + b.width + tolerance || p.y > b.y + b.height + tolerance) {
+            return false;
         }
-        return false;
+        return PathGeometry.isNearPolyline(getOutline(),
+                p.x - points.getOriginX(), p.y - points.getOriginY(), tolerance);
     }
 
     @Override
     public void setPosition(int x, int y) {
         if (points.isEmpty()) return;
-        Rectangle b = getBounds();
+        Rectangle b = getCachedBounds();
         int dx = x - b.x;
         int dy = y - b.y;
-        List<Point> translated = new ArrayList<>();
-        for (Point pt : points) translated.add(new Point(pt.x + dx, pt.y + dy));
-        points = translated;
+        points.translate(dx, dy);
+        b.translate(dx, dy);
     }
 
     @Override
     public Point getPosition() {
-        return new Point(getBounds().x, getBounds().y);
+        Rectangle b = getCachedBounds();
+        return new Point(b.x, b.y);
+    }
+
+    @Override
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public Color getStrokeColor() {
+        return strokeColor;
+    }
+
+    /**
+     * @return a copy of the points, in absolute coordinates
+     */
+    public PointBuffer getPoints() {
+        return points.copy();
+    }
+
+    public int getPointCount() {
+        return points.size();
+    }
+
+    /**
+     * @return true when the points are fitted cubic segments rather than a polyline
+     */
+    public boolean isCubic() {
+        return cubic;
     }
 
     @Override
     public Rectangle getBounds() {
+        return new Rectangle(getCachedBounds());
+    }
+
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        into.setBounds(getCachedBounds());
+        return into;
+    }
+
+    private Rectangle getCachedBounds() {
+        if (cachedBounds == null) {
+            cachedBounds = computeBounds();
+        }
+        return cachedBounds;
+    }
+
+    private Rectangle computeBounds() {
         if (points.isEmpty()) return new Rectangle(0, 0, 0, 0);
+        int buf = (int) Math.ceil(strokeWidth / 2.0) + 1;
+        if (cubic && points.size() >= 4) {
+            // Control points only bound the curve loosely; measure the flattened curve instead.
+            float[] outline = getOutline();
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i + 1 < outline.length; i += 2) {
+                minX = Math.min(minX, outline[i]);
+                minY = Math.min(minY, outline[i + 1]);
+                maxX = Math.max(maxX, outline[i]);
+                maxY = Math.max(maxY, outline[i + 1]);
+            }
+            int left = (int) Math.floor(minX) + points.getOriginX() - buf;
+            int top = (int) Math.floor(minY) + points.getOriginY() - buf;
+            int right = (int) Math.ceil(maxX) + points.getOriginX() + buf;
+            int bottom = (int) Math.ceil(maxY) + points.getOriginY() + buf;
+            return new Rectangle(left, top, right - left, bottom - top);
+        }
         int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
         int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-        for (Point p : points) {
-            if (p.x < minX) minX = p.x;
-            if (p.y < minY) minY = p.y;
-            if (p.x > maxX) maxX = p.x;
-            if (p.y > maxY) maxY = p.y;
+        for (int i = 0; i < points.size(); i++) {
+            int px = points.getX(i);
+            int py = points.getY(i);
+            if (px < minX) minX = px;
+            if (py < minY) minY = py;
+            if (px > maxX) maxX = px;
+            if (py > maxY) maxY = py;
         }
-        int buf = (int) Math.ceil(strokeWidth / 2.0) + 1;
         return new Rectangle(minX - buf, minY - buf, maxX - minX + 2 * buf, maxY - minY + 2 * buf);
     }
 
@@ -111,9 +252,37 @@ public class FreehandElement implements PaintElement {
 
     @Override
     public PaintElement duplicate() {
-        FreehandElement copy = new FreehandElement(points, strokeColor, strokeWidth);
+        FreehandElement copy = new FreehandElement(points, strokeColor, strokeWidth, cubic);
         copy.setShadow(hasShadow);
         copy.setDisplayName(displayName);
         return copy;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("coords", points.toPackedArray());
+        fields.put("cubic", cubic);
+        fields.put("strokeColor", strokeColor);
+        fields.put("strokeWidth", strokeWidth);
+        fields.put("hasShadow", hasShadow);
+        fields.put("displayName", displayName);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        int[] coords = (int[]) fields.get("coords", null);
+        if (coords != null) {
+            points = PointBuffer.fromPackedArray(coords);
+        } else {
+            List<Point> legacyPoints = (List<Point>) fields.get("points", null);
+            points = legacyPoints != null ? PointBuffer.fromPoints(legacyPoints) : new PointBuffer();
+        }
+        cubic = fields.get("cubic", false);
+        strokeColor = (Color) fields.get("strokeColor", null);
+        strokeWidth = fields.get("strokeWidth", 0f);
+        hasShadow = fields.get("hasShadow", false);
+        displayName = (String) fields.get("displayName", null);
+    }
 }
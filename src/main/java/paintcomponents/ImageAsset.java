@@ -0,0 +1,240 @@
+package paintcomponents;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.imageio.ImageIO;
+
+/**
+ * One image as stored in a project: the encoded bytes it was imported from,
+ * their content hash and the decoded bitmap. Instances come from
+ * {@link ImagePool}, which hands out one per distinct content, so every
+ * element showing the same picture shares both the bytes and the bitmap.
+ *
+ * The bitmap is not held by the asset but by {@link ImageCache}, which may
+ * evict it; it is then decoded again from the encoded bytes on next use,
+ * either right away through {@link #getImage()} or in the background through
+ * {@link #getImageIfDecoded()}. Assets read from a drawing file start out
+ * undecoded with only their dimensions known, and their encoded bytes stay
+ * in the file: each decode reads them with positional reads, so no mapping
+ * or handle is left open, and checks them against the hash. Imported images
+ * hold their bytes in memory only until a save has written them, and are
+ * read from the drawing file the same way from then on.
+ *
+ * Treat the bitmap as read-only; it is shared by every element using the asset.
+ */
+public final class ImageAsset {
+    // Held for reading a drawing file, and for writing while a save replaces one; see ImagePool#replaceFile.
+    static final ReentrantReadWriteLock FILES = new ReentrantReadWriteLock();
+
+    private final String hash;
+    private final int encodedLength;
+    private final int width;
+    private final int height;
+    private volatile Source source;
+    // Set once decoding failed, so corrupt data is not decoded again on every repaint.
+    private volatile boolean broken;
+
+    ImageAsset(String hash, byte[] encoded, BufferedImage image) {
+        this(hash, encoded, image.getWidth(), image.getHeight());
+        ImageCache.put(this, image, false);
+    }
+
+    ImageAsset(String hash, byte[] encoded, int width, int height) {
+        this.hash = hash;
+        this.encodedLength = encoded.length;
+        this.width = width;
+        this.height = height;
+        this.source = new Source(encoded, null, 0);
+    }
+
+    ImageAsset(String hash, File file, long offset, int length, int width, int height) {
+        this.hash = hash;
+        this.encodedLength = length;
+        this.width = width;
+        this.height = height;
+        this.source = new Source(null, file, offset);
+    }
+
+    /**
+     * Where the encoded bytes are: held in memory, or at an offset in a drawing file.
+     */
+    private static final class Source {
+        final byte[] bytes;
+        final File file;
+        final long offset;
+
+        Source(byte[] bytes, File file, long offset) {
+            this.bytes = bytes;
+            this.file = file;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * @return hex SHA-256 of the encoded bytes
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the bitmap, decoding it on the calling thread if needed.
+     *
+     * @return the bitmap, or null if the encoded bytes cannot be decoded
+     */
+    public BufferedImage getImage() {
+        BufferedImage decoded = ImageCache.get(this);
+        return decoded != null || broken ? decoded : decode();
+    }
+
+    /**
+     * Returns the bitmap if it is in the cache; otherwise queues it
+     * on {@link ImageDecoder} and returns null without blocking.
+     */
+    public BufferedImage getImageIfDecoded() {
+        BufferedImage decoded = ImageCache.get(this);
+        if (decoded == null && !broken) {
+            ImageDecoder.request(this);
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns the bitmap if it is in the cache, without decoding it or queuing
+     * it for decoding.
+     */
+    public BufferedImage getImageIfCached() {
+        return ImageCache.get(this);
+    }
+
+    /**
+     * @return true if decoding was attempted and failed
+     */
+    public boolean isBroken() {
+        return broken;
+    }
+
+    /**
+     * Width as stored with the asset; known without decoding.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Height as stored with the asset; known without decoding.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * Writes the bytes the image was imported from, without re-encoding.
+     *
+     * @throws IOException if they are in a drawing file that cannot be read or no longer holds them
+     */
+    public void writeEncodedTo(OutputStream out) throws IOException {
+        out.write(readEncoded());
+    }
+
+    /**
+     * @return true if the encoded bytes are read from this drawing file rather than held in memory
+     */
+    boolean isStoredIn(File file) {
+        return file.equals(source.file);
+    }
+
+    /**
+     * Reads the encoded bytes into memory, for when the file holding them is about to be replaced.
+     */
+    void keepInMemory() throws IOException {
+        source = new Source(readEncoded(), null, 0);
+    }
+
+    /**
+     * Reads the encoded bytes from a drawing file from now on, dropping any
+     * held in memory. Call holding the write lock of {@link #FILES}.
+     */
+    void storeAt(File file, long offset) {
+        source = new Source(null, file, offset);
+    }
+
+    /**
+     * Takes the encoded bytes back into memory if they could not be read from
+     * the drawing file holding them, say because it was deleted, so the image
+     * works again once imported anew.
+     *
+     * @param encoded bytes with the same hash
+     */
+    synchronized void recover(byte[] encoded) {
+        if (broken && source.bytes == null) {
+            source = new Source(encoded, null, 0);
+            broken = false;
+        }
+    }
+
+    private byte[] readEncoded() throws IOException {
+        Source current = source;
+        if (current.bytes != null) {
+            return current.bytes;
+        }
+        FILES.readLock().lock();
+        try {
+            // A save may have moved the bytes while this thread waited for the lock.
+            current = source;
+            if (current.bytes != null) {
+                return current.bytes;
+            }
+            byte[] bytes = new byte[encodedLength];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try (FileChannel channel = FileChannel.open(current.file.toPath(), StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, current.offset + buffer.position()) < 0) {
+                        throw new EOFException(current.file.getName() + " ends before an image saved in it.");
+                    }
+                }
+            }
+            // The file may have been changed by another program since it was opened.
+            if (!ImagePool.hash(bytes).equals(hash)) {
+                throw new IOException(current.file.getName() + " no longer holds an image saved in it.");
+            }
+            return bytes;
+        } finally {
+            FILES.readLock().unlock();
+        }
+    }
+
+    synchronized BufferedImage decode() {
+        // A concurrent caller may have decoded it while this one waited for the lock.
+        BufferedImage image = ImageCache.get(this);
+        if (image == null && !broken) {
+            try {
+                image = ImageIO.read(new ByteArrayInputStream(readEncoded()));
+                if (image != null) {
+                    image = ImagePool.toCompatible(image);
+                }
+            } catch (IOException | RuntimeException e) {
+                image = null;
+            }
+            if (image != null) {
+                ImageCache.put(this, image, true);
+            } else {
+                broken = true;
+            }
+        }
+        return image;
+    }
+}
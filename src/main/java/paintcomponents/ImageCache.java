@@ -0,0 +1,151 @@
+package paintcomponents;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds decoded bitmaps of {@link ImageAsset}s within a byte budget, evicting
+ * the least recently drawn first. An evicted bitmap is decoded again from the
+ * asset's encoded bytes the next time it is needed, so the budget bounds the
+ * heap used for pixels however many images a drawing contains.
+ *
+ * The budget defaults to a quarter of the maximum heap and can be set with
+ * {@code -Dpfeasel.imageCacheMB=<megabytes>} or {@link #setBudget(long)}.
+ */
+public final class ImageCache {
+    private static final long DEFAULT_BUDGET = budgetFromProperty();
+
+    private static final Map<ImageAsset, BufferedImage> BITMAPS = new LinkedHashMap<>(64, 0.75f, true);
+    private static long budget = DEFAULT_BUDGET;
+    private static long usedBytes;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    private ImageCache() {
+    }
+
+    /**
+     * @param bytes most bytes of decoded pixels to keep; the most recently used
+     *              bitmap is kept even if it alone is larger
+     */
+    public static synchronized void setBudget(long bytes) {
+        budget = Math.max(0, bytes);
+        trim();
+    }
+
+    public static synchronized long getBudget() {
+        return budget;
+    }
+
+    public static synchronized Stats getStats() {
+        return new Stats(BITMAPS.size(), usedBytes, budget, hits, misses, evictions);
+    }
+
+    /**
+     * Drops every bitmap; assets decode again when next drawn.
+     */
+    public static synchronized void clear() {
+        BITMAPS.clear();
+        usedBytes = 0;
+    }
+
+    static synchronized BufferedImage get(ImageAsset asset) {
+        BufferedImage image = BITMAPS.get(asset);
+        if (image != null) {
+            hits++;
+        }
+        return image;
+    }
+
+    /**
+     * @param decoded true if the bitmap had to be decoded because it was not cached; counted as a miss
+     */
+    static synchronized void put(ImageAsset asset, BufferedImage image, boolean decoded) {
+        if (decoded) {
+            misses++;
+        }
+        BufferedImage previous = BITMAPS.put(asset, image);
+        if (previous != null) {
+            usedBytes -= sizeOf(previous);
+        }
+        usedBytes += sizeOf(image);
+        trim();
+    }
+
+    private static void trim() {
+        Iterator<BufferedImage> it = BITMAPS.values().iterator();
+        while (usedBytes > budget && BITMAPS.size() > 1 && it.hasNext()) {
+            usedBytes -= sizeOf(it.next());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private static long budgetFromProperty() {
+        Long megabytes = Long.getLong("pfeasel.imageCacheMB");
+        return megabytes != null ? megabytes * 1024 * 1024 : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Counters since startup, as of one moment.
+     */
+    public static final class Stats {
+        private final int entries;
+        private final long usedBytes;
+        private final long budget;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(int entries, long usedBytes, long budget, long hits, long misses, long evictions) {
+            this.entries = entries;
+            this.usedBytes = usedBytes;
+            this.budget = budget;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getUsedBytes() {
+            return usedBytes;
+        }
+
+        public long getBudget() {
+            return budget;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return how many times a bitmap had to be decoded
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("images %d (%d/%d MB), hits %d, misses %d, evictions %d",
+                    entries, usedBytes >> 20, budget >> 20, hits, misses, evictions);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package paintcomponents;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes {@link ImageAsset}s on background threads for elements that are
+ * drawn before their bitmap is available. Each asset is queued at most once
+ * at a time; when it is done the listener set with {@link #setOnDecoded} runs
+ * on the decoding thread, typically to schedule a repaint.
+ */
+public final class ImageDecoder {
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, task -> {
+        Thread thread = new Thread(task, "image-decoder");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+    private static final Set<ImageAsset> PENDING = ConcurrentHashMap.newKeySet();
+    private static volatile Runnable onDecoded = () -> { };
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * @param listener runs on a decoder thread after each background decode, failed ones included
+     */
+    public static void setOnDecoded(Runnable listener) {
+        onDecoded = listener != null ? listener : () -> { };
+    }
+
+    static void request(ImageAsset asset) {
+        if (!PENDING.add(asset)) {
+            return;
+        }
+        EXECUTOR.execute(() -> {
+            try {
+                asset.decode();
+            } finally {
+                PENDING.remove(asset);
+            }
+            onDecoded.run();
+        });
+    }
+}
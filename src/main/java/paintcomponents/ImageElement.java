@@ -9,26 +9,49 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
 import javax.imageio.ImageIO;
 
 public class ImageElement implements PaintElement {
     private static final long serialVersionUID = 1L;
+    // Shown in place of an image whose bitmap is still being decoded.
+    private static final Color PLACEHOLDER_FILL = new Color(235, 235, 235);
+    private static final Color PLACEHOLDER_BORDER = new Color(180, 180, 180);
 
-    private transient BufferedImage image;
+    private transient ImageAsset asset;
     private Point position;
     private String imagePath;
     private String displayName;
     private boolean hasShadow = false;
 
     public ImageElement(BufferedImage image, Point position, String imagePath, String displayName) {
-        this.image = image;
+        this(image != null ? pooled(image) : null, position, imagePath, displayName);
+    }
+
+    public ImageElement(ImageAsset asset, Point position, String imagePath, String displayName) {
+        this.asset = asset;
         this.position = new Point(position);
         this.imagePath = imagePath;
         this.displayName = displayName;
     }
 
+    private static ImageAsset pooled(BufferedImage image) {
+        try {
+            return ImagePool.fromImage(image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public BufferedImage getImage() {
-        return image;
+        return asset != null ? asset.getImage() : null;
+    }
+
+    /**
+     * @return the shared image data, or null if the element has no image
+     */
+    public ImageAsset getAsset() {
+        return asset;
     }
 
     public String getImagePath() {
@@ -36,6 +59,7 @@ public class ImageElement implements PaintElement {
     }
 
     public void paint(Graphics g, Point offset) {
+        BufferedImage image = getImage();
         if (image != null) {
             Graphics2D g2d = (Graphics2D) g.create();
             if (offset != null) {
@@ -48,29 +72,73 @@ public class ImageElement implements PaintElement {
 
     @Override
     public void draw(Graphics2D g2d) {
+        if (asset == null) {
+            return;
+        }
+        // Never decode on the painting thread; draw a placeholder until the decoder is done.
+        BufferedImage image = asset.getImageIfDecoded();
         if (image != null) {
-            if (hasShadow()) {
-                // Shadow logic can be implemented here
-            }
             g2d.drawImage(image, position.x, position.y, null);
+        } else {
+            drawPlaceholder(g2d);
+        }
+    }
+
+    /**
+     * Like {@link #draw}, but draws the placeholder instead of queuing a decode
+     * when the bitmap is not cached, for drawing copies off the screen.
+     */
+    public void drawIfCached(Graphics2D g2d) {
+        if (asset == null) {
+            return;
+        }
+        BufferedImage image = asset.getImageIfCached();
+        if (image != null) {
+            g2d.drawImage(image, position.x, position.y, null);
+        } else {
+            drawPlaceholder(g2d);
+        }
+    }
+
+    private void drawPlaceholder(Graphics2D g2d) {
+        int width = asset.getWidth();
+        int height = asset.getHeight();
+        g2d.setColor(PLACEHOLDER_FILL);
+        g2d.fillRect(position.x, position.y, width, height);
+        g2d.setColor(PLACEHOLDER_BORDER);
+        g2d.setStroke(StrokeCache.get(1f));
+        g2d.drawRect(position.x, position.y, width - 1, height - 1);
+        if (asset.isBroken()) {
+            g2d.drawLine(position.x, position.y, position.x + width - 1, position.y + height - 1);
+            g2d.drawLine(position.x, position.y + height - 1, position.x + width - 1, position.y);
         }
     }
 
     @Override
     public boolean contains(Point p) {
-        if (image == null) return false;
+        if (asset == null) return false;
         Rectangle bounds = getBounds();
         return bounds.contains(p);
     }
 
     @Override
     public Rectangle getBounds() {
-        if (image != null) {
-            return new Rectangle(position.x, position.y, image.getWidth(), image.getHeight());
+        if (asset != null) {
+            return new Rectangle(position.x, position.y, asset.getWidth(), asset.getHeight());
         }
         return new Rectangle(position.x, position.y, 0, 0);
     }
 
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        if (asset != null) {
+            into.setBounds(position.x, position.y, asset.getWidth(), asset.getHeight());
+        } else {
+            into.setBounds(position.x, position.y, 0, 0);
+        }
+        return into;
+    }
+
     @Override
     public void setPosition(int x, int y) {
         this.position.setLocation(x, y);
@@ -98,20 +166,15 @@ public class ImageElement implements PaintElement {
 
     @Override
     public PaintElement duplicate() {
-        BufferedImage newImage = null;
-        if (this.image != null) {
-            newImage = new BufferedImage(this.image.getWidth(), this.image.getHeight(), this.image.getType());
-            Graphics2D g = newImage.createGraphics();
-            g.drawImage(this.image, 0, 0, null);
-            g.dispose();
-        }
-        ImageElement duplicate = new ImageElement(newImage, new Point(this.position.x + 10, this.position.y + 10), this.imagePath, this.displayName + " (copy)");
+        // Assets are shared and never modified, so the copy reuses the same bitmap.
+        ImageElement duplicate = new ImageElement(this.asset, new Point(this.position.x + 10, this.position.y + 10), this.imagePath, this.displayName + " (copy)");
         duplicate.setShadow(this.hasShadow());
         return duplicate;
     }
 
     @Override
     public void drawShadow(Graphics2D g2d, Color shadowColor, int shadowXOffset, int shadowYOffset) {
+        BufferedImage image = asset != null ? asset.getImageIfDecoded() : null;
         if (image != null && hasShadow) {
             g2d.drawImage(image, position.x + shadowXOffset, position.y + shadowYOffset, null);
         }
@@ -129,6 +192,7 @@ public class ImageElement implements PaintElement {
 
     private void writeObject(ObjectOutputStream oos) throws IOException {
         oos.defaultWriteObject();
+        BufferedImage image = getImage();
         if (image != null) {
             ImageIO.write(image, "png", oos);
         } else {
@@ -138,6 +202,7 @@ public class ImageElement implements PaintElement {
 
     private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
         ois.defaultReadObject();
-        this.image = ImageIO.read(ois);
+        BufferedImage image = ImageIO.read(ois);
+        this.asset = image != null ? ImagePool.fromImage(image) : null;
     }
 }
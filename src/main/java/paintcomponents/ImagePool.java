@@ -0,0 +1,295 @@
+package paintcomponents;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Interns {@link ImageAsset}s by the SHA-256 of their encoded bytes, so the
+ * same picture imported, pasted, duplicated or loaded several times is held
+ * once. Entries are weak and go away when no element uses them any more.
+ */
+public final class ImagePool {
+    private static final Map<String, WeakReference<ImageAsset>> ASSETS = new HashMap<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ImagePool() {
+    }
+
+    /**
+     * Returns the asset for already encoded image bytes (PNG, JPEG, GIF, ...),
+     * decoding them only if this content is not pooled yet. The array must
+     * not be modified afterwards.
+     *
+     * @throws IOException if the bytes are not an image ImageIO can read
+     */
+    public static ImageAsset fromEncoded(byte[] encoded) throws IOException {
+        String hash = hash(encoded);
+        ImageAsset asset = lookup(hash, encoded);
+        if (asset != null) {
+            return asset;
+        }
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        if (image == null) {
+            throw new IOException("Unsupported or corrupt image data.");
+        }
+        return intern(new ImageAsset(hash, encoded, toCompatible(image)));
+    }
+
+    /**
+     * Returns the asset for encoded image bytes without decoding them; the
+     * bitmap is decoded when first drawn. Used when loading drawings, whose
+     * images were validated when they were imported.
+     *
+     * @param width stored width of the image
+     * @param height stored height of the image
+     */
+    public static ImageAsset fromEncodedLazily(byte[] encoded, int width, int height) {
+        String hash = hash(encoded);
+        ImageAsset asset = lookup(hash, encoded);
+        return asset != null ? asset : intern(new ImageAsset(hash, encoded, width, height));
+    }
+
+    /**
+     * Like {@link #fromEncodedLazily(byte[], int, int)}, taking the dimensions
+     * from the image header instead of decoding the pixels.
+     *
+     * @throws IOException if no ImageIO reader recognizes the bytes
+     */
+    public static ImageAsset fromEncodedLazily(byte[] encoded) throws IOException {
+        String hash = hash(encoded);
+        ImageAsset asset = lookup(hash, encoded);
+        if (asset != null) {
+            return asset;
+        }
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported or corrupt image data.");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return intern(new ImageAsset(hash, encoded, reader.getWidth(0), reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the asset for an image saved in a drawing file, without reading
+     * it: the hash the file lists for it is trusted until the bytes are read
+     * for decoding, and checked then.
+     *
+     * @param offset where the encoded bytes start in the file
+     * @param length how many there are
+     */
+    public static ImageAsset fromFile(String hash, File file, long offset, int length, int width, int height) {
+        ImageAsset asset = lookup(hash);
+        return asset != null ? asset
+                : intern(new ImageAsset(hash, file.getAbsoluteFile(), offset, length, width, height));
+    }
+
+    /**
+     * Records that a save wrote these images to a drawing file, so they are
+     * read from it from now on instead of being held in memory.
+     *
+     * @param offsets where the file holds each image's encoded bytes, by hash
+     */
+    public static void savedIn(File file, Map<String, Long> offsets) {
+        ImageAsset.FILES.writeLock().lock();
+        try {
+            storeAll(file.getAbsoluteFile(), offsets);
+        } finally {
+            ImageAsset.FILES.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces a drawing file that images may be read from. Images the new
+     * file holds are read from their place in it afterwards, like after
+     * {@link #savedIn}; the others are read into memory first, so none is
+     * left pointing at bytes that are gone. Reads of drawing files wait
+     * while the file is replaced.
+     *
+     * @param offsets where the new file holds each image's encoded bytes, by hash
+     * @param replace moves the new file into place
+     */
+    public static void replaceFile(File file, Map<String, Long> offsets, FileReplacement replace) throws IOException {
+        File absolute = file.getAbsoluteFile();
+        List<ImageAsset> stored = new ArrayList<>();
+        synchronized (ImagePool.class) {
+            for (WeakReference<ImageAsset> ref : ASSETS.values()) {
+                ImageAsset asset = ref.get();
+                if (asset != null && asset.isStoredIn(absolute)) {
+                    stored.add(asset);
+                }
+            }
+        }
+        for (ImageAsset asset : stored) {
+            if (!offsets.containsKey(asset.getHash())) {
+                try {
+                    asset.keepInMemory();
+                } catch (IOException e) {
+                    // Already unreadable; decoding it reports it broken as before.
+                }
+            }
+        }
+        ImageAsset.FILES.writeLock().lock();
+        try {
+            replace.run();
+            storeAll(absolute, offsets);
+        } finally {
+            ImageAsset.FILES.writeLock().unlock();
+        }
+    }
+
+    private static void storeAll(File file, Map<String, Long> offsets) {
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            ImageAsset asset = lookup(entry.getKey());
+            if (asset != null) {
+                asset.storeAt(file, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Puts a new drawing file in place of the old one, for {@link #replaceFile}.
+     */
+    public interface FileReplacement {
+        void run() throws IOException;
+    }
+
+    /**
+     * @return the pooled asset whose encoded bytes have this hash, or null if none is alive
+     */
+    public static ImageAsset find(String hash) {
+        return lookup(hash);
+    }
+
+    /**
+     * Returns the asset for a bitmap that has no encoded form yet, encoding it
+     * as PNG once. Prefer {@link #fromEncoded} when the original bytes exist.
+     */
+    public static ImageAsset fromImage(BufferedImage image) throws IOException {
+        return fromImage(image, "png");
+    }
+
+    /**
+     * Like {@link #fromImage(BufferedImage)}, encoding with the given ImageIO
+     * format instead; images with alpha are always stored as PNG.
+     */
+    public static ImageAsset fromImage(BufferedImage image, String formatName) throws IOException {
+        String format = image.getColorModel().hasAlpha() ? "png" : formatName;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No " + format + " writer available.");
+        }
+        byte[] encoded = out.toByteArray();
+        String hash = hash(encoded);
+        ImageAsset asset = lookup(hash, encoded);
+        return asset != null ? asset : intern(new ImageAsset(hash, encoded, toCompatible(image)));
+    }
+
+    /**
+     * Converts a decoded image to the layout of the default screen, so drawing
+     * it is a plain (and usually accelerated) blit instead of a per-pixel
+     * conversion on every repaint. Returns the image itself if it already
+     * matches or there is no screen.
+     */
+    static BufferedImage toCompatible(BufferedImage image) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return image;
+        }
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        int transparency = image.getTransparency();
+        if (image.getColorModel().equals(config.getColorModel(transparency))) {
+            return image;
+        }
+        BufferedImage compatible = config.createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+        Graphics2D g2d = compatible.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+
+    /**
+     * @return the number of distinct images currently alive
+     */
+    public static synchronized int size() {
+        purge();
+        return ASSETS.size();
+    }
+
+    private static synchronized ImageAsset lookup(String hash) {
+        WeakReference<ImageAsset> ref = ASSETS.get(hash);
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Like {@link #lookup(String)}, given the bytes the caller holds for the hash.
+     */
+    private static ImageAsset lookup(String hash, byte[] encoded) {
+        ImageAsset asset = lookup(hash);
+        if (asset != null) {
+            asset.recover(encoded);
+        }
+        return asset;
+    }
+
+    private static synchronized ImageAsset intern(ImageAsset asset) {
+        // Another thread may have decoded the same bytes meanwhile; keep the first.
+        ImageAsset existing = lookup(asset.getHash());
+        if (existing != null) {
+            return existing;
+        }
+        purge();
+        ASSETS.put(asset.getHash(), new WeakReference<>(asset));
+        return asset;
+    }
+
+    private static void purge() {
+        for (Iterator<WeakReference<ImageAsset>> it = ASSETS.values().iterator(); it.hasNext();) {
+            if (it.next().get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    static String hash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+        byte[] sum = digest.digest(data);
+        char[] hex = new char[sum.length * 2];
+        for (int i = 0; i < sum.length; i++) {
+            hex[i * 2] = HEX[(sum[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[sum[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -3,6 +3,8 @@ package paintcomponents;
 import java.awt.*;
 
 public class LineElement implements PaintElement {
+    private static final long serialVersionUID = 7930011149149036623L;
+
     private int x1, y1, x2, y2;
     private Color strokeColor;
     private float strokeWidth;
@@ -23,7 +25,7 @@ public class LineElement implements PaintElement {
     public void draw(Graphics2D g2d) {
         if (strokeColor != null && strokeWidth > 0) {
             g2d.setColor(strokeColor);
-            g2d.setStroke(new BasicStroke(strokeWidth));
+            g2d.setStroke(StrokeCache.get(strokeWidth));
             g2d.drawLine(x1, y1, x2, y2);
         }
     }
@@ -53,7 +55,7 @@ public class LineElement implements PaintElement {
     public void drawShadow(Graphics2D g2d, Color shadowColor, int shadowXOffset, int shadowYOffset) {
         if (strokeColor != null && strokeWidth > 0) { // Only draw shadow if the line itself is visible
             g2d.setColor(shadowColor);
-            g2d.setStroke(new BasicStroke(strokeWidth));
+            g2d.setStroke(StrokeCache.get(strokeWidth));
             g2d.drawLine(x1 + shadowXOffset, y1 + shadowYOffset, x2 + shadowXOffset, y2 + shadowYOffset);
         }
     }
@@ -112,6 +114,7 @@ public class LineElement implements PaintElement {
         return strokeColor;
     }
 
+    @Override
     public float getStrokeWidth() {
         return strokeWidth;
     }
@@ -128,4 +131,12 @@ public class LineElement implements PaintElement {
         int buffer = (int) Math.ceil(strokeWidth / 2.0);
         return new java.awt.Rectangle(minX - buffer, minY - buffer, maxX - minX + 2 * buffer, maxY - minY + 2 * buffer);
     }
+
+    @Override
+    public java.awt.Rectangle getBounds(java.awt.Rectangle into) {
+        int buffer = (int) Math.ceil(strokeWidth / 2.0);
+        into.setBounds(Math.min(x1, x2) - buffer, Math.min(y1, y2) - buffer,
+                Math.abs(x2 - x1) + 2 * buffer, Math.abs(y2 - y1) + 2 * buffer);
+        return into;
+    }
 }
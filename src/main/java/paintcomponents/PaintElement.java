@@ -86,6 +86,27 @@ public interface PaintElement extends Serializable { // Added extends Serializab
      */
     java.awt.Rectangle getBounds();
 
+    /**
+     * Stores the bounding rectangle in {@code into} rather than allocating a
+     * new one, for code that reads the bounds of every element on every frame.
+     * @param into The rectangle to overwrite.
+     * @return {@code into}
+     */
+    default java.awt.Rectangle getBounds(java.awt.Rectangle into) {
+        into.setBounds(getBounds());
+        return into;
+    }
+
+    /**
+     * Gets the width of the stroke used to outline the element.
+     * Used to pad the bounds when computing the area the element paints.
+     *
+     * @return the stroke width, or 0 for elements without an outline
+     */
+    default float getStrokeWidth() {
+        return 0f;
+    }
+
     /**
      * Indicates whether this element supports bounds-based resizing.
      *
@@ -0,0 +1,52 @@
+package paintcomponents;
+
+import java.awt.Shape;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Helpers for hit testing path-based elements against a flattened polyline.
+ */
+final class PathGeometry {
+    // Maximum distance between a curve and its flattened approximation, in pixels.
+    private static final double FLATNESS = 0.5;
+
+    private PathGeometry() {
+    }
+
+    /**
+     * Flattens a single-subpath shape into packed x/y pairs.
+     */
+    static float[] flatten(Shape shape) {
+        float[] xy = new float[64];
+        int size = 0;
+        float[] coords = new float[6];
+        for (PathIterator it = new FlatteningPathIterator(shape.getPathIterator(null), FLATNESS); !it.isDone(); it.next()) {
+            int type = it.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                if (size + 2 > xy.length) {
+                    xy = Arrays.copyOf(xy, xy.length * 2);
+                }
+                xy[size++] = coords[0];
+                xy[size++] = coords[1];
+            }
+        }
+        return Arrays.copyOf(xy, size);
+    }
+
+    /**
+     * Checks whether a point lies within {@code tolerance} of any segment of a
+     * polyline stored as packed x/y pairs.
+     */
+    static boolean isNearPolyline(float[] xy, double px, double py, double tolerance) {
+        double toleranceSq = tolerance * tolerance;
+        for (int i = 2; i + 1 < xy.length; i += 2) {
+            if (Line2D.ptSegDistSq(xy[i - 2], xy[i - 1], xy[i], xy[i + 1], px, py) <= toleranceSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
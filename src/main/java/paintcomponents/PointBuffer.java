@@ -0,0 +1,143 @@
+package paintcomponents;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Growable list of integer points packed into a single {@code int[]} as
+ * interleaved x/y pairs, with an origin offset applied on read so the whole
+ * buffer can be translated in O(1).
+ *
+ * Used instead of {@code List<Point>} for long strokes, where one object per
+ * vertex dominates the heap and every move would otherwise reallocate them all.
+ */
+public final class PointBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] coords;
+    private int size;
+    private int originX;
+    private int originY;
+
+    public PointBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointBuffer(int capacity) {
+        coords = new int[Math.max(capacity, 1) * 2];
+    }
+
+    /**
+     * Creates a buffer from absolute x/y pairs, as written by {@link #toPackedArray()}.
+     */
+    public static PointBuffer fromPackedArray(int[] packed) {
+        PointBuffer buffer = new PointBuffer(packed.length / 2);
+        System.arraycopy(packed, 0, buffer.coords, 0, packed.length & ~1);
+        buffer.size = packed.length / 2;
+        return buffer;
+    }
+
+    public static PointBuffer fromPoints(List<Point> points) {
+        PointBuffer buffer = new PointBuffer(points.size());
+        for (Point p : points) {
+            buffer.add(p.x, p.y);
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getX(int index) {
+        return coords[index * 2] + originX;
+    }
+
+    public int getY(int index) {
+        return coords[index * 2 + 1] + originY;
+    }
+
+    /**
+     * X coordinate relative to the origin; stable across {@link #translate}.
+     */
+    public int getLocalX(int index) {
+        return coords[index * 2];
+    }
+
+    /**
+     * Y coordinate relative to the origin; stable across {@link #translate}.
+     */
+    public int getLocalY(int index) {
+        return coords[index * 2 + 1];
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public Point get(int index) {
+        return new Point(getX(index), getY(index));
+    }
+
+    public void add(int x, int y) {
+        if (size * 2 + 2 > coords.length) {
+            coords = Arrays.copyOf(coords, coords.length * 2);
+        }
+        coords[size * 2] = x - originX;
+        coords[size * 2 + 1] = y - originY;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+        originX = 0;
+        originY = 0;
+    }
+
+    /**
+     * Moves every point by (dx, dy) without touching the stored coordinates.
+     */
+    public void translate(int dx, int dy) {
+        originX += dx;
+        originY += dy;
+    }
+
+    public PointBuffer copy() {
+        PointBuffer copy = new PointBuffer(size);
+        System.arraycopy(coords, 0, copy.coords, 0, size * 2);
+        copy.size = size;
+        copy.originX = originX;
+        copy.originY = originY;
+        return copy;
+    }
+
+    /**
+     * @return absolute x/y pairs with the origin applied
+     */
+    public int[] toPackedArray() {
+        int[] packed = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            packed[i * 2] = coords[i * 2] + originX;
+            packed[i * 2 + 1] = coords[i * 2 + 1] + originY;
+        }
+        return packed;
+    }
+
+    public List<Point> toPointList() {
+        List<Point> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            points.add(get(i));
+        }
+        return points;
+    }
+}
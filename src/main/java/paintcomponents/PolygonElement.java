@@ -3,14 +3,21 @@ package paintcomponents;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Polygon;
-import java.awt.BasicStroke;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.GeneralPath;
 import java.util.List;
 import java.util.ArrayList;
 
 public class PolygonElement implements PaintElement {
+    private static final long serialVersionUID = -7586055526165652295L;
+
     private Polygon polygon;
+    // Polygon.getBounds() hands out a new Rectangle on every call, and drawing
+    // a Polygon copies it into a fresh path; both are kept until the next move.
+    private transient Rectangle cachedBounds;
+    private transient GeneralPath cachedPath;
     private Color fillColor;
     private Color strokeColor;
     private float strokeWidth;
@@ -37,26 +44,57 @@ public class PolygonElement implements PaintElement {
     public void draw(Graphics2D g2d) {
         if (fillEnabled && fillColor != null) {
             g2d.setColor(fillColor);
-            g2d.fillPolygon(polygon);
+            if (isAntialiased(g2d)) {
+                g2d.fill(getPath());
+            } else {
+                g2d.fillPolygon(polygon);
+            }
         }
         if (strokeEnabled && strokeColor != null && strokeWidth > 0) {
             g2d.setColor(strokeColor);
-            g2d.setStroke(new BasicStroke(strokeWidth));
-            g2d.drawPolygon(polygon);
+            g2d.setStroke(StrokeCache.get(strokeWidth));
+            g2d.draw(getPath());
+        }
+    }
+
+    /**
+     * Anti-aliased fills and all outlines turn a Polygon into a new path on
+     * every call, so they draw the cached path instead. Aliased fills keep
+     * the integer fill, which allocates nothing and whose edge pixels differ
+     * slightly from a path fill.
+     */
+    private static boolean isAntialiased(Graphics2D g2d) {
+        return g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON;
+    }
+
+    private GeneralPath getPath() {
+        if (cachedPath == null) {
+            // Same shape and winding rule as the Polygon itself.
+            cachedPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD, polygon.npoints + 1);
+            if (polygon.npoints > 0) {
+                cachedPath.moveTo(polygon.xpoints[0], polygon.ypoints[0]);
+                for (int i = 1; i < polygon.npoints; i++) {
+                    cachedPath.lineTo(polygon.xpoints[i], polygon.ypoints[i]);
+                }
+                cachedPath.closePath();
+            }
         }
+        return cachedPath;
     }
 
     @Override
     public void drawShadow(Graphics2D g2d, Color shadowColor, int shadowXOffset, int shadowYOffset) {
         if (hasShadow && shadowColor != null) {
-            Polygon shadowPolygon = new Polygon();
-            for (int i = 0; i < polygon.npoints; i++) {
-                shadowPolygon.addPoint(polygon.xpoints[i] + shadowXOffset, polygon.ypoints[i] + shadowYOffset);
-            }
             g2d.setColor(shadowColor);
             // Draw shadow if the main shape is either filled or stroked
             if (fillEnabled || strokeEnabled) {
-                g2d.fillPolygon(shadowPolygon);
+                g2d.translate(shadowXOffset, shadowYOffset);
+                if (isAntialiased(g2d)) {
+                    g2d.fill(getPath());
+                } else {
+                    g2d.fillPolygon(polygon);
+                }
+                g2d.translate(-shadowXOffset, -shadowYOffset);
             }
         }
     }
@@ -72,6 +110,10 @@ public class PolygonElement implements PaintElement {
         int dx = x - bounds.x;
         int dy = y - bounds.y;
         polygon.translate(dx, dy);
+        if (cachedBounds != null) {
+            cachedBounds.translate(dx, dy);
+        }
+        cachedPath = null;
     }
 
     @Override
@@ -117,8 +159,45 @@ public class PolygonElement implements PaintElement {
         return newPolygon;
     }
 
+    @Override
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public Color getFillColor() {
+        return fillColor;
+    }
+
+    public Color getStrokeColor() {
+        return strokeColor;
+    }
+
+    public boolean isFillEnabled() {
+        return fillEnabled;
+    }
+
+    public boolean isStrokeEnabled() {
+        return strokeEnabled;
+    }
+
+    /**
+     * @return a copy of the outline
+     */
+    public Polygon getPolygon() {
+        return new Polygon(polygon.xpoints, polygon.ypoints, polygon.npoints);
+    }
+
     @Override
     public Rectangle getBounds() {
         return polygon.getBounds();
     }
+
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        if (cachedBounds == null) {
+            cachedBounds = polygon.getBounds();
+        }
+        into.setBounds(cachedBounds);
+        return into;
+    }
 }
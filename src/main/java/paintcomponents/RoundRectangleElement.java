@@ -2,11 +2,12 @@ package paintcomponents;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.BasicStroke;
 import java.awt.Point;
 import java.awt.Rectangle;
 
 public class RoundRectangleElement implements PaintElement {
+    private static final long serialVersionUID = -4019505419441584802L;
+
     private int x, y, width, height, arcWidth, arcHeight;
     private Color fillColor;
     private Color strokeColor;
@@ -43,7 +44,7 @@ public class RoundRectangleElement implements PaintElement {
         }
         if (strokeEnabled && strokeColor != null && strokeWidth > 0) {
             g2d.setColor(strokeColor);
-            g2d.setStroke(new BasicStroke(strokeWidth));
+            g2d.setStroke(StrokeCache.get(strokeWidth));
             g2d.drawRoundRect(x, y, width, height, arcWidth, arcHeight);
         }
     }
@@ -110,11 +111,46 @@ public class RoundRectangleElement implements PaintElement {
         return newRect;
     }
 
+    @Override
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public Color getFillColor() {
+        return fillColor;
+    }
+
+    public Color getStrokeColor() {
+        return strokeColor;
+    }
+
+    public boolean isFillEnabled() {
+        return fillEnabled;
+    }
+
+    public boolean isStrokeEnabled() {
+        return strokeEnabled;
+    }
+
+    public int getArcWidth() {
+        return arcWidth;
+    }
+
+    public int getArcHeight() {
+        return arcHeight;
+    }
+
     @Override
     public Rectangle getBounds() {
         return new Rectangle(x, y, width, height);
     }
 
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        into.setBounds(x, y, width, height);
+        return into;
+    }
+
     @Override
     public boolean isResizable() {
         return true;
@@ -0,0 +1,120 @@
+package paintcomponents;
+
+import java.awt.BasicStroke;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared, bounded pool of {@link BasicStroke} instances. Strokes are immutable,
+ * so elements and overlays that draw with the same width, cap, join and dash
+ * reuse one instance instead of allocating a new stroke every frame.
+ *
+ * Lookups go through a per-thread probe key and do not allocate on a hit.
+ */
+public final class StrokeCache {
+    private static final int MAX_ENTRIES = 256;
+    // BasicStroke's own default.
+    private static final float DEFAULT_MITER_LIMIT = 10f;
+
+    private static final Map<Key, BasicStroke> CACHE = new LinkedHashMap<Key, BasicStroke>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BasicStroke> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final ThreadLocal<Key> PROBE = ThreadLocal.withInitial(Key::new);
+
+    private StrokeCache() {
+    }
+
+    /**
+     * @return a stroke equal to {@code new BasicStroke(width)}
+     */
+    public static BasicStroke get(float width) {
+        return get(width, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, DEFAULT_MITER_LIMIT, null, 0f);
+    }
+
+    /**
+     * @return a stroke equal to {@code new BasicStroke(width, cap, join)}
+     */
+    public static BasicStroke get(float width, int cap, int join) {
+        return get(width, cap, join, DEFAULT_MITER_LIMIT, null, 0f);
+    }
+
+    /**
+     * @return a stroke equal to {@code new BasicStroke(width, cap, join, miterLimit, dash, dashPhase)};
+     *         the dash array is copied if a new stroke has to be created
+     */
+    public static BasicStroke get(float width, int cap, int join, float miterLimit, float[] dash, float dashPhase) {
+        Key probe = PROBE.get();
+        probe.set(width, cap, join, miterLimit, dash, dashPhase);
+        try {
+            synchronized (CACHE) {
+                BasicStroke stroke = CACHE.get(probe);
+                if (stroke == null) {
+                    stroke = new BasicStroke(width, cap, join, miterLimit, dash, dashPhase);
+                    CACHE.put(probe.copy(), stroke);
+                }
+                return stroke;
+            }
+        } finally {
+            // Do not keep the caller's dash array reachable from the probe.
+            probe.dash = null;
+        }
+    }
+
+    private static final class Key {
+        private float width;
+        private int cap;
+        private int join;
+        private float miterLimit;
+        private float[] dash;
+        private float dashPhase;
+
+        void set(float width, int cap, int join, float miterLimit, float[] dash, float dashPhase) {
+            this.width = width;
+            this.cap = cap;
+            this.join = join;
+            this.miterLimit = miterLimit;
+            this.dash = dash;
+            this.dashPhase = dashPhase;
+        }
+
+        Key copy() {
+            Key copy = new Key();
+            copy.set(width, cap, join, miterLimit, dash != null ? dash.clone() : null, dashPhase);
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Float.floatToIntBits(width) == Float.floatToIntBits(other.width)
+                    && cap == other.cap
+                    && join == other.join
+                    && Float.floatToIntBits(miterLimit) == Float.floatToIntBits(other.miterLimit)
+                    && Float.floatToIntBits(dashPhase) == Float.floatToIntBits(other.dashPhase)
+                    && Arrays.equals(dash, other.dash);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(width);
+            result = 31 * result + cap;
+            result = 31 * result + join;
+            result = 31 * result + Float.floatToIntBits(miterLimit);
+            result = 31 * result + Arrays.hashCode(dash);
+            result = 31 * result + Float.floatToIntBits(dashPhase);
+            return result;
+        }
+    }
+}
@@ -6,9 +6,15 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.geom.Rectangle2D;
 
 public class TextElement implements PaintElement {
+    private static final long serialVersionUID = -8590612838616009786L;
+
+    // Same context a default offscreen Graphics2D reports: identity transform, no AA, integer metrics.
+    private static final FontRenderContext MEASURE_FRC = new FontRenderContext(null, false, false);
+
     private String text;
     private int x;
     private int y;
@@ -17,6 +23,10 @@ public class TextElement implements PaintElement {
     private boolean hasShadow;
     private String displayName;
     private Rectangle bounds; // For contains method, calculated when needed
+    // Glyphs laid out for the last context drawn into; rebuilt when text, font or that context changes
+    private transient GlyphVector glyphs;
+    private transient FontRenderContext glyphsFrc;
+    private transient boolean needsLayout;
 
     public TextElement(String text, int x, int y, Font font, Color color) {
         this.text = text;
@@ -35,7 +45,7 @@ public class TextElement implements PaintElement {
         }
         g2d.setFont(font);
         g2d.setColor(color);
-        g2d.drawString(text, x, y);
+        drawText(g2d, x, y);
     }
 
     @Override
@@ -43,17 +53,35 @@ public class TextElement implements PaintElement {
         if (hasShadow && text != null && !text.isEmpty() && shadowColor != null) {
             g2d.setFont(font);
             g2d.setColor(shadowColor);
-            g2d.drawString(text, x + shadowXOffset, y + shadowYOffset);
+            drawText(g2d, x + shadowXOffset, y + shadowYOffset);
+        }
+    }
+
+    private void drawText(Graphics2D g2d, int drawX, int drawY) {
+        FontRenderContext frc = g2d.getFontRenderContext();
+        if (glyphs == null || !frc.equals(glyphsFrc)) {
+            char[] chars = text.toCharArray();
+            // Bidi or complex scripts need the full layout drawString does
+            needsLayout = Font.textRequiresLayout(chars, 0, chars.length);
+            glyphs = needsLayout ? null : font.createGlyphVector(frc, chars);
+            glyphsFrc = frc;
+        }
+        if (needsLayout) {
+            g2d.drawString(text, drawX, drawY);
+        } else {
+            g2d.drawGlyphVector(glyphs, drawX, drawY);
         }
     }
 
-    private void calculateBounds(Graphics2D g2d) {
-        if (text == null || text.isEmpty() || font == null) {
+    // Measures with a shared context, so no Graphics2D is needed; called whenever text or font change
+    public void recacheBounds() {
+        glyphs = null;
+        glyphsFrc = null;
+        if (font == null || text == null || text.isEmpty()) {
             this.bounds = new Rectangle();
             return;
         }
-        FontRenderContext frc = g2d.getFontRenderContext();
-        Rectangle2D stringBounds = font.getStringBounds(text, frc);
+        Rectangle2D stringBounds = font.getStringBounds(text, MEASURE_FRC);
         // x, y is the baseline start. stringBounds.getY() is typically negative (ascent).
         this.bounds = new Rectangle(
             x + (int) stringBounds.getX(),
@@ -62,57 +90,23 @@ public class TextElement implements PaintElement {
             (int) stringBounds.getHeight()
         );
     }
-    
-    // Call this method if Graphics2D is not available for contains check, 
-    // e.g. by creating a temporary BufferedImage to get Graphics2D
-    public void recacheBounds() {
-        // This is a simplified approach. For accurate bounds without a direct g2d,
-        // one might need to create a temporary BufferedImage and get its Graphics2D context.
-        // Or, store FontMetrics if possible.
-        // For now, this might lead to issues if called without a valid g2d context prior.
-        // A better approach would be to pass g2d to contains or ensure bounds are fresh.
-        // Let's assume for now that contains will have access to a g2d or bounds are fresh.
-        // This method is a placeholder for a more robust cache update.
-        if (this.font != null && this.text != null && !this.text.isEmpty()) {
-             // Create a dummy graphics context to calculate bounds
-            java.awt.image.BufferedImage tempImage = new java.awt.image.BufferedImage(1, 1, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-            Graphics2D tempG2d = tempImage.createGraphics();
-            tempG2d.setFont(this.font);
-            calculateBounds(tempG2d);
-            tempG2d.dispose();
-        } else {
-            this.bounds = new Rectangle();
-        }
-    }
 
 
     @Override
     public boolean contains(Point p) {
-        // This is problematic if g2d is not available.
-        // For simplicity, we'll assume bounds are up-to-date.
-        // A robust solution would pass g2d or ensure recacheBounds is called appropriately.
         if (this.bounds == null) {
-            // Fallback: if bounds not calculated, try to calculate them.
-            // This requires a Graphics2D context. If we are in a context without one (e.g. mouse click before paint)
-            // this will be an issue.
-            // For now, we'll rely on bounds being calculated during draw or explicitly.
-            // This is a common challenge in Swing component hit detection.
-            // A simple solution for now: if bounds are null, consider it not contained.
-            // Or, if we absolutely need it, we'd call recacheBounds, but that's inefficient on every check.
-            // Let's assume bounds are calculated during draw and are reasonably fresh for move operations.
-            // If not, the move tool might not pick up text elements correctly until after a repaint.
-            recacheBounds(); // Attempt to calculate bounds if not already set.
+            recacheBounds(); // Measured once per text/font change, then only translated on move
         }
         return bounds != null && bounds.contains(p);
     }
 
     @Override
     public void setPosition(int x, int y) {
+        if (this.bounds != null) { // Text and font are unchanged, so the cached bounds just shift
+            this.bounds.translate(x - this.x, y - this.y);
+        }
         this.x = x;
         this.y = y;
-        if (this.bounds != null) { // If bounds were cached, update their position too
-             recacheBounds(); // Recalculate bounds based on new position
-        }
     }
 
     @Override
@@ -163,6 +157,18 @@ public class TextElement implements PaintElement {
         this.color = color;
     }
 
+    public String getText() {
+        return text;
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
     @Override
     public PaintElement duplicate() {
         TextElement newText = new TextElement(text, x, y, font, color);
@@ -174,12 +180,21 @@ public class TextElement implements PaintElement {
     @Override
     public Rectangle getBounds() {
         if (bounds == null) {
-            // This might be problematic if called before a draw operation
-            // or without a valid Graphics context for recacheBounds.
-            // Consider ensuring recacheBounds is called appropriately elsewhere
-            // or pass Graphics2D to getBounds if necessary for on-the-fly calculation.
-            recacheBounds(); 
+            recacheBounds();
         }
         return bounds != null ? new Rectangle(bounds) : new Rectangle(x,y,0,0);
     }
+
+    @Override
+    public Rectangle getBounds(Rectangle into) {
+        if (bounds == null) {
+            recacheBounds();
+        }
+        if (bounds != null) {
+            into.setBounds(bounds);
+        } else {
+            into.setBounds(x, y, 0, 0);
+        }
+        return into;
+    }
 }
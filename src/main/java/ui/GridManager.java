@@ -2,12 +2,16 @@ package ui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 public class GridManager {
 
     public static final int DEFAULT_GRID_SPACING_WIDTH = 20;
     public static final int DEFAULT_GRID_SPACING_HEIGHT = 20;
     public static final Color DEFAULT_GRID_COLOR = new Color(200, 200, 200);
+    // Larger cells are drawn line by line; there are few of them and the tile would be big.
+    private static final int MAX_TILE_PIXELS = 512 * 512;
 
     private boolean gridVisible = false; // Renamed from showGrid, matches Main.java expectation
     private int gridSpacingWidth = DEFAULT_GRID_SPACING_WIDTH;
@@ -16,6 +20,16 @@ public class GridManager {
 
     private Runnable repaintCallback; // Changed from Canvas to Runnable
 
+    // One grid cell rendered at device resolution, repeated with gridPaint.
+    private BufferedImage gridTile;
+    private TexturePaint gridPaint;
+    private int tileSpacingWidth;
+    private int tileSpacingHeight;
+    private Color tileColor;
+    private double tileScaleX;
+    private double tileScaleY;
+    private Object tileAntialiasing;
+
     public GridManager(Runnable repaintCallback) { // Constructor updated
         this.repaintCallback = repaintCallback;
     }
@@ -91,13 +105,103 @@ public class GridManager {
         if (!gridVisible) { // Used renamed field
             return;
         }
+        // Only draw the lines that fall inside the clip; partial repaints pass a small one.
+        Rectangle area = new Rectangle(0, 0, canvasWidth, canvasHeight);
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+            if (area.isEmpty()) {
+                return;
+            }
+        }
+        int top = area.y;
+        int bottom = area.y + area.height;
+        int left = area.x;
+        int right = area.x + area.width;
+
+        if (g instanceof Graphics2D && fillWithTile((Graphics2D) g, area)) {
+            return;
+        }
+
         g.setColor(gridColor);
-        for (int x = 0; x < canvasWidth; x += gridSpacingWidth) {
-            g.drawLine(x, 0, x, canvasHeight);
+        for (int x = firstLineAtOrAfter(left, gridSpacingWidth); x < right; x += gridSpacingWidth) {
+            g.drawLine(x, top, x, bottom);
+        }
+        for (int y = firstLineAtOrAfter(top, gridSpacingHeight); y < bottom; y += gridSpacingHeight) {
+            g.drawLine(left, y, right, y);
         }
-        for (int y = 0; y < canvasHeight; y += gridSpacingHeight) {
-            g.drawLine(0, y, canvasWidth, y);
+    }
+
+    /**
+     * Fills the area with a cached one-cell tile instead of drawing every line.
+     *
+     * @return false when the transform or cell size rules out an exact 1:1 tile
+     */
+    private boolean fillWithTile(Graphics2D g2d, Rectangle area) {
+        AffineTransform transform = g2d.getTransform();
+        if (transform.getShearX() != 0 || transform.getShearY() != 0) {
+            return false;
         }
+        double scaleX = transform.getScaleX();
+        double scaleY = transform.getScaleY();
+        double tileWidth = gridSpacingWidth * scaleX;
+        double tileHeight = gridSpacingHeight * scaleY;
+        // Fractional device sizes would make the tile drift against the lines it replaces.
+        if (tileWidth < 1 || tileHeight < 1 || tileWidth != Math.rint(tileWidth) || tileHeight != Math.rint(tileHeight)
+                || tileWidth * tileHeight > MAX_TILE_PIXELS) {
+            return false;
+        }
+
+        Object antialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        if (gridPaint == null
+                || tileAntialiasing != antialiasing
+                || tileSpacingWidth != gridSpacingWidth
+                || tileSpacingHeight != gridSpacingHeight
+                || !gridColor.equals(tileColor)
+                || tileScaleX != scaleX
+                || tileScaleY != scaleY) {
+            if (gridTile != null) {
+                gridTile.flush();
+            }
+            gridTile = new BufferedImage((int) tileWidth, (int) tileHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D tile = gridTile.createGraphics();
+            tile.scale(scaleX, scaleY);
+            if (antialiasing != null) {
+                tile.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+            }
+            tile.setColor(gridColor);
+            // A line can straddle the cell edge once scaled, so draw the lines on both
+            // edges and let the tile clip them; the halves meet when the tile repeats.
+            int w = gridSpacingWidth;
+            int h = gridSpacingHeight;
+            tile.drawLine(0, -1, 0, h + 1);
+            tile.drawLine(w, -1, w, h + 1);
+            tile.drawLine(-1, 0, w + 1, 0);
+            tile.drawLine(-1, h, w + 1, h);
+            tile.dispose();
+            gridPaint = new TexturePaint(gridTile, new Rectangle(0, 0, gridSpacingWidth, gridSpacingHeight));
+            tileSpacingWidth = gridSpacingWidth;
+            tileSpacingHeight = gridSpacingHeight;
+            tileColor = gridColor;
+            tileScaleX = scaleX;
+            tileScaleY = scaleY;
+            tileAntialiasing = antialiasing;
+        }
+
+        Paint savedPaint = g2d.getPaint();
+        Object savedAntialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setPaint(gridPaint);
+        g2d.fill(area);
+        g2d.setPaint(savedPaint);
+        if (savedAntialiasing != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, savedAntialiasing);
+        }
+        return true;
+    }
+
+    private static int firstLineAtOrAfter(int coordinate, int spacing) {
+        return ((coordinate + spacing - 1) / spacing) * spacing;
     }
 
     // Method to snap a point to the grid